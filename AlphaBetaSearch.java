@@ -0,0 +1,260 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Alpha-beta searcher owned by a single thread. It searches its own copy of the position in place and
+// shares only the transposition table and its stop flag with the searchers running on other threads.
+public class AlphaBetaSearch {
+    private final State state; // Position searched in place (make/unmake), never shared
+    private final int winCount; // Number of consecutive pieces needed to win
+    private final TranspositionTable table; // Shared, lock-free
+    private long deadline; // System.nanoTime() at which the search must stop
+    private final AtomicBoolean stop; // Stop flag shared with other searchers, raised by whichever sees the deadline pass
+    private final int cols; // Columns of the board, the length of every move list
+    private int rootMoveCount; // Move count of the root position; plies are counted from there
+    private int[][] moveBuffers = new int[0][]; // One move list per ply below the root, allocated on first use
+    private boolean aborted; // Local copy of the stop flag, refreshed every 1024 states
+
+    // Move ordering: transposition-table move, then killer moves, then history score, then centre-out
+    private static final int HISTORY_LIMIT = 1 << 28; // History scores are halved before they can overflow
+    private int[][] scoreBuffers = new int[0][]; // Ordering score of each move, one buffer per ply
+    private int[][] killers = new int[0][]; // Two most recent cutoff moves per ply (-1 = none)
+    private final int[][] history; // Cutoff score per side ('X' = 0, 'O' = 1) and column
+
+    final SearchMetrics metrics = new SearchMetrics(); // Counters of this searcher, merged into the move's metrics
+    int value; // Result of the last searchRoot() or searchMove() call
+
+    // Constructor: Creates a searcher with its own state for boards of the root's size. The per-ply buffers grow
+    // with the depth actually searched, so their size does not depend on the number of cells.
+    public AlphaBetaSearch(State root, int winCount, TranspositionTable table, AtomicBoolean stop) {
+        this.state = root.cloneState();
+        this.winCount = winCount;
+        this.table = table;
+        this.stop = stop;
+        this.cols = root.cols;
+        this.history = new int[2][root.cols];
+    }
+
+    // Prepares the searcher for a new root search: copies the root position and clears the counters
+    public void reset(State root, long deadline) {
+        state.copyFrom(root);
+        rootMoveCount = root.moveCount;
+        this.deadline = deadline;
+        aborted = false;
+        metrics.reset();
+    }
+
+    // Searches the root moves in the given order, each with the best value so far as alpha, and returns the best
+    // one (or -1 if stopped); its value for the player to move at the root is left in `value`
+    public int searchRoot(int[] rootMoves, int moveCount, int depth) {
+        int bestMove = -1;
+        int bestValue = -Integer.MAX_VALUE;
+        for (int i = 0; i < moveCount; i++) {
+            int moveValue = searchMove(rootMoves[i], depth, bestValue);
+            if (aborted) {
+                return -1;
+            }
+            if (bestMove < 0 || moveValue > bestValue) { // A value <= alpha only means "not better"
+                bestValue = moveValue;
+                bestMove = rootMoves[i];
+            }
+        }
+        value = bestValue;
+        return bestMove;
+    }
+
+    // Searches the root move `move` to the given depth with the window (alpha, +inf) and returns its value
+    // for the player to move at the root. A value <= alpha is only an upper bound: the move is no better than alpha.
+    public int searchMove(int move, int depth, int alpha) {
+        // Killers and history start empty for every root move: the cutoffs in one root move's subtree predict
+        // those in another's badly (sharing them visits up to twice the states of a 6x7x4 depth-16 search)
+        for (int[] plyKillers : killers) {
+            if (plyKillers != null) {
+                plyKillers[0] = -1;
+                plyKillers[1] = -1;
+            }
+        }
+        for (int[] sideHistory : history) {
+            Arrays.fill(sideHistory, 0);
+        }
+        boolean maximizing = state.currentPlayer == 'O'; // The search scores positions from 'O''s point of view
+        state.makeMove(move);
+        state.switchPlayer();
+        value = maximizing
+                ? alphaBeta(depth - 1, alpha, Integer.MAX_VALUE, false) // The opponent ('X') moves next
+                : -alphaBeta(depth - 1, -Integer.MAX_VALUE, -alpha, true); // 'X' at the root: negate back
+        state.switchPlayer();
+        state.unmakeMove(move);
+        return value;
+    }
+
+    // Returns true if the search was stopped before it finished
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    // Counts a visited state and, every 1024 states, checks the clock and the shared stop flag
+    private boolean outOfTime() {
+        metrics.nodes++; // Increment state counter
+        if ((metrics.nodes & 1023) == 0) {
+            if (System.nanoTime() > deadline) {
+                stop.set(true);
+            }
+            aborted = stop.get();
+        }
+        return aborted;
+    }
+
+    // Alpha-Beta Pruning algorithm: Optimized Minimax with pruning, backed by the transposition table
+    private int alphaBeta(int depth, int alpha, int beta, boolean isMaximizing) {
+        if (outOfTime()) {
+            return 0; // Result is discarded
+        }
+        boolean won = metrics.lastMoveWins(state, winCount); // Only lines through the last token can be new wins
+        if (won || depth == 0 || state.isFull()) {
+            if (SearchMetrics.ENABLED) {
+                metrics.leafEvaluations++;
+            }
+            return ConnectFour.evaluateState(state, won);
+        }
+
+        // Reuse an earlier result for this position (or its mirror image) if it was searched at least as deep.
+        // Mirrored positions share the entry under the smaller of the two hashes; its best move is stored for
+        // that orientation and flipped when this position is the mirrored one.
+        long key = Math.min(state.hash, state.mirrorHash);
+        boolean mirrored = state.mirrorHash < state.hash;
+        int ttMove = -1;
+        long entry = table.probe(key);
+        if (SearchMetrics.ENABLED) {
+            metrics.ttProbes++;
+            metrics.ttHits += entry != 0 ? 1 : 0;
+        }
+        if (entry != 0) {
+            ttMove = TranspositionTable.bestMove(entry);
+            if (mirrored && ttMove >= 0) {
+                ttMove = state.cols - 1 - ttMove;
+            }
+            if (TranspositionTable.depth(entry) >= depth) {
+                int value = TranspositionTable.value(entry);
+                int flag = TranspositionTable.flag(entry);
+                if (flag == TranspositionTable.EXACT) {
+                    return value;
+                } else if (flag == TranspositionTable.LOWER_BOUND) {
+                    alpha = Math.max(alpha, value);
+                } else {
+                    beta = Math.min(beta, value);
+                }
+                if (beta <= alpha) {
+                    return value;
+                }
+            }
+        }
+        int alphaOrig = alpha;
+        int betaOrig = beta;
+
+        int ply = state.moveCount - rootMoveCount;
+        allocatePly(ply);
+        int side = state.currentPlayer == 'X' ? 0 : 1;
+        int[] moves = moveBuffers[ply];
+        int moveCount = state.getOrderedMoves(moves); // Centre columns first
+        orderMoves(moves, moveCount, ttMove, ply, side);
+
+        int bestEval = isMaximizing ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int bestMove = moves[0];
+        if (SearchMetrics.ENABLED) {
+            metrics.expandedNodes++;
+        }
+        for (int i = 0; i < moveCount; i++) {
+            int move = moves[i];
+            if (SearchMetrics.ENABLED) {
+                metrics.movesSearched++;
+            }
+            state.makeMove(move);
+            state.switchPlayer();
+            int eval = alphaBeta(depth - 1, alpha, beta, !isMaximizing); // Evaluate as the other player
+            state.switchPlayer();
+            state.unmakeMove(move);
+            if (aborted) {
+                return 0; // Do not store results of an unfinished search
+            }
+            if (isMaximizing ? eval > bestEval : eval < bestEval) {
+                bestEval = eval;
+                bestMove = move;
+            }
+            if (isMaximizing) {
+                alpha = Math.max(alpha, eval); // Update alpha
+            } else {
+                beta = Math.min(beta, eval); // Update beta
+            }
+            if (beta <= alpha) {
+                if (SearchMetrics.ENABLED) {
+                    metrics.cutoffs++;
+                }
+                recordCutoff(move, depth, ply, side);
+                break; // Prune remaining branches
+            }
+        }
+
+        int flag = bestEval <= alphaOrig ? TranspositionTable.UPPER_BOUND
+                : bestEval >= betaOrig ? TranspositionTable.LOWER_BOUND
+                : TranspositionTable.EXACT;
+        table.store(key, bestEval, depth, flag, mirrored ? state.cols - 1 - bestMove : bestMove);
+        return bestEval;
+    }
+
+    // Allocates the move, score and killer buffers of `ply` the first time the search reaches it
+    private void allocatePly(int ply) {
+        if (ply >= moveBuffers.length) {
+            int length = Math.max(ply + 1, 2 * moveBuffers.length);
+            moveBuffers = Arrays.copyOf(moveBuffers, length);
+            scoreBuffers = Arrays.copyOf(scoreBuffers, length);
+            killers = Arrays.copyOf(killers, length);
+        }
+        if (moveBuffers[ply] == null) {
+            moveBuffers[ply] = new int[cols];
+            scoreBuffers[ply] = new int[cols];
+            killers[ply] = new int[] {-1, -1};
+        }
+    }
+
+    // Sorts the moves by ordering score. Insertion sort is stable, so equal scores keep the centre-out order.
+    private void orderMoves(int[] moves, int moveCount, int ttMove, int ply, int side) {
+        int[] scores = scoreBuffers[ply];
+        for (int i = 0; i < moveCount; i++) {
+            int move = moves[i];
+            int score;
+            if (move == ttMove) {
+                score = Integer.MAX_VALUE; // Best move from an earlier search of this position
+            } else if (move == killers[ply][0]) {
+                score = Integer.MAX_VALUE - 1; // Caused a cutoff in a sibling position
+            } else if (move == killers[ply][1]) {
+                score = Integer.MAX_VALUE - 2;
+            } else {
+                score = history[side][move]; // How often this column caused cutoffs for this side
+            }
+            int j = i;
+            while (j > 0 && scores[j - 1] < score) {
+                scores[j] = scores[j - 1];
+                moves[j] = moves[j - 1];
+                j--;
+            }
+            scores[j] = score;
+            moves[j] = move;
+        }
+    }
+
+    // Remembers a move that caused a beta cutoff as a killer for this ply and in the history table
+    private void recordCutoff(int move, int depth, int ply, int side) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        history[side][move] += depth * depth; // Cutoffs far from the leaves count more
+        if (history[side][move] > HISTORY_LIMIT) {
+            for (int[] sideHistory : history) {
+                for (int col = 0; col < sideHistory.length; col++) {
+                    sideHistory[col] >>= 1;
+                }
+            }
+        }
+    }
+}
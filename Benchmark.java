@@ -0,0 +1,218 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+// Benchmark suite for the State engine and the searches, run with `make bench` (optionally `java Benchmark <filter>`).
+// It follows the JMH approach: warm-up iterations so the JIT has compiled the code, then timed iterations of a
+// fixed length, results consumed by a sink, and allocation/GC figures like JMH's GC profiler. Every benchmark
+// cycles through a fixed set of positions for each of the three board presets and a large 10x12x5 board.
+public class Benchmark {
+    private static final int WARMUP_ITERATIONS = 5; // Untimed iterations before measuring
+    private static final int MEASUREMENT_ITERATIONS = 5; // Timed iterations
+    private static final long ITERATION_NANOS = 500_000_000L; // Length of one iteration (0.5 s)
+
+    static long sink; // Every result is folded in here so the JIT cannot drop the benchmarked work
+
+    // Board presets: rows, cols, winCount, minimax depth, alpha-beta depth
+    private static final int[][] PRESETS = {
+            {3, 3, 3, 9, 9},
+            {3, 5, 3, 7, 10},
+            {6, 7, 4, 5, 8},
+            {10, 12, 5, 4, 7},
+    };
+
+    // Benchmark positions per preset, as the columns played (0-based, base-36 digits) from the empty board
+    private static final String[][] POSITIONS = {
+            {"", "1", "10"},
+            {"", "2", "2132"},
+            {"", "3", "3323", "33234432"},
+            {"", "5", "5565", "56546576"},
+    };
+
+    // One benchmarked operation; returns the search nodes it visited (0 for non-search operations)
+    interface Operation {
+        long run();
+    }
+
+    // Runs untimed preparation before each operation (e.g. clearing the transposition table)
+    interface Setup {
+        void run();
+    }
+
+    // A named benchmark with its operation and optional per-operation setup
+    private static final class Case {
+        final String name;
+        final Operation operation;
+        final Setup setup;
+
+        Case(String name, Operation operation, Setup setup) {
+            this.name = name;
+            this.operation = operation;
+            this.setup = setup;
+        }
+    }
+
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        System.out.printf("%-22s %-6s %14s %14s %12s %10s %5s%n",
+                "Benchmark", "Board", "ns/op", "nodes/sec", "B/op", "MB/sec", "GCs");
+        for (int p = 0; p < PRESETS.length; p++) {
+            int[] preset = PRESETS[p];
+            String board = preset[0] + "x" + preset[1] + "x" + preset[2];
+            State[] positions = new State[POSITIONS[p].length];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = position(preset[0], preset[1], preset[2], POSITIONS[p][i]);
+            }
+            for (Case benchmark : benchmarks(positions, preset[3], preset[4])) {
+                if (benchmark.name.contains(filter)) {
+                    measure(benchmark.name, board, benchmark.operation, benchmark.setup);
+                }
+            }
+        }
+    }
+
+    // Builds the benchmark list for one preset
+    private static List<Case> benchmarks(State[] positions, int minimaxDepth, int alphaBetaDepth) {
+        int rows = positions[0].rows;
+        int cols = positions[0].cols;
+        int winCount = positions[0].winCount;
+        int[] moves = new int[cols];
+        int[] next = new int[1]; // Counter used to cycle through the positions (and columns)
+        List<Case> list = new ArrayList<>();
+
+        list.add(new Case("State.makeMove+unmake", () -> {
+            State state = positions[next[0] % positions.length];
+            int col = next[0]++ % cols;
+            if (state.makeMove(col)) {
+                sink += state.hash;
+                state.unmakeMove(col);
+            }
+            return 0;
+        }, null));
+        list.add(new Case("State.cloneState", () -> {
+            sink += positions[next[0]++ % positions.length].cloneState().moveCount;
+            return 0;
+        }, null));
+        list.add(new Case("State.checkWin", () -> {
+            sink += positions[next[0]++ % positions.length].checkWin(winCount) ? 1 : 0;
+            return 0;
+        }, null));
+        list.add(new Case("State.lastMoveWins", () -> {
+            sink += positions[next[0]++ % positions.length].lastMoveWins(winCount) ? 1 : 0;
+            return 0;
+        }, null));
+        list.add(new Case("State.getValidMoves", () -> {
+            sink += positions[next[0]++ % positions.length].getValidMoves().size();
+            return 0;
+        }, null));
+        list.add(new Case("State.getValidMoves[]", () -> {
+            sink += positions[next[0]++ % positions.length].getValidMoves(moves);
+            return 0;
+        }, null));
+
+        ConnectFour game = new ConnectFour(rows, cols, winCount, 4);
+        game.setVerbose(false);
+        game.setThreads(1); // Single-threaded so the figures are comparable between machines
+        list.add(new Case("minimax depth " + minimaxDepth, () -> {
+            SearchMetrics metrics = new SearchMetrics();
+            sink += game.getBestMove(positions[next[0]++ % positions.length], minimaxDepth, metrics);
+            return metrics.nodes;
+        }, null));
+        list.add(new Case("alphaBeta depth " + alphaBetaDepth, () -> {
+            SearchMetrics metrics = new SearchMetrics();
+            sink += game.getBestMoveAlphaBeta(positions[next[0]++ % positions.length], alphaBetaDepth, metrics);
+            return metrics.nodes;
+        }, game::clearTable)); // Every search starts with an empty transposition table
+        return list;
+    }
+
+    // Runs the warm-up and measurement iterations of one benchmark and prints its line
+    private static void measure(String name, String board, Operation operation, Setup setup) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(operation, setup);
+        }
+        long gcBefore = gcCount();
+        double[] nanosPerOp = new double[MEASUREMENT_ITERATIONS];
+        long ops = 0;
+        long nodes = 0;
+        long nanos = 0;
+        long bytes = 0;
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            long startBytes = allocatedBytes();
+            long[] result = iteration(operation, setup); // ops, nodes, nanos
+            bytes += allocatedBytes() - startBytes;
+            nanosPerOp[i] = (double) result[2] / result[0];
+            ops += result[0];
+            nodes += result[1];
+            nanos += result[2];
+        }
+        long gcAfter = gcCount();
+
+        double mean = (double) nanos / ops;
+        double variance = 0;
+        for (double value : nanosPerOp) {
+            variance += (value - mean) * (value - mean);
+        }
+        double error = Math.sqrt(variance / (MEASUREMENT_ITERATIONS - 1));
+        String nodesPerSec = nodes == 0 ? "-" : String.format("%.0f", nodes * 1e9 / nanos);
+        System.out.printf("%-22s %-6s %14s %14s %12.1f %10.1f %5d%n",
+                name, board, String.format("%.1f +- %.1f", mean, error), nodesPerSec,
+                (double) bytes / ops, bytes * 1e9 / nanos / (1 << 20), gcAfter - gcBefore);
+    }
+
+    // Runs the operation for one iteration and returns {operations, nodes, timed nanoseconds}.
+    // Without a setup, operations run back to back in batches; with one, each operation is timed on its own.
+    private static long[] iteration(Operation operation, Setup setup) {
+        long ops = 0;
+        long nodes = 0;
+        long timed = 0;
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < ITERATION_NANOS) {
+            if (setup == null) {
+                long batchStart = System.nanoTime();
+                for (int i = 0; i < 1024; i++) {
+                    nodes += operation.run();
+                }
+                timed += System.nanoTime() - batchStart;
+                ops += 1024;
+            } else {
+                setup.run();
+                long opStart = System.nanoTime();
+                nodes += operation.run();
+                timed += System.nanoTime() - opStart;
+                ops++;
+            }
+        }
+        return new long[] {ops, nodes, timed};
+    }
+
+    // Plays the given columns from the empty board, the AI ('O') being the player to move in search benchmarks
+    private static State position(int rows, int cols, int winCount, String columns) {
+        State state = new State(rows, cols, winCount, columns.length() % 2 == 0 ? 'O' : 'X');
+        for (char c : columns.toCharArray()) {
+            state.makeMove(Character.digit(c, 36));
+            state.switchPlayer();
+        }
+        return state;
+    }
+
+    // Bytes allocated so far by this thread
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    // Total collections over all garbage collectors
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+}
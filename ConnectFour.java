@@ -1,22 +1,38 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ConnectFour {
     private State state; // Represents the current game state (board and player turn)
     private int winCount; // Number of consecutive pieces needed to win
-    private int opponentType; // Opponent type (1 = Human, 2 = Random AI, 3 = Minimax AI, 4 = Alpha-Beta Pruning AI)
+    private int opponentType; // Opponent type (1 = Human, 2 = Random AI, 3 = Minimax AI, 4 = Alpha-Beta Pruning AI, 5 = MCTS AI)
 
     // Constructor: Initializes the game with the specified board size, win condition, and opponent type
     public ConnectFour(int rows, int cols, int winCount, int opponentType) {
         this.winCount = winCount; // Set the win condition
         this.opponentType = opponentType; // Set the opponent type
-        this.state = new State(rows, cols, 'X'); // Initialize the game state with the first player as 'X'
+        this.state = new State(rows, cols, winCount, 'X'); // Initialize the game state with the first player as 'X'
     }
 
     // Main game loop
     public void playGame() {
         Scanner scanner = new Scanner(System.in); // For user input
-        Random random = new Random(); // Used for Random AI's move selection
         boolean gameRunning = true; // Flag to keep the game loop running
 
         while (gameRunning) {
@@ -28,6 +44,7 @@ public class ConnectFour {
                 System.out.println("Player " + state.currentPlayer + ", enter column (1-" + state.cols + "): ");
                 int col = -1; // Initialize to an invalid column
                 boolean validInput = false;
+                startPondering(state); // Search the position while the player thinks
 
                 // Loop until the player provides a valid column number
                 while (!validInput) {
@@ -37,7 +54,7 @@ public class ConnectFour {
                         // Validate the input
                         if (col < 0 || col >= state.cols) {
                             System.out.println("Invalid column. Try again.");
-                        } else if (!state.getValidMoves().contains(col)) {
+                        } else if (!state.canPlay(col)) {
                             System.out.println("Column is full. Try another.");
                         } else {
                             validInput = true; // Input is valid
@@ -47,29 +64,22 @@ public class ConnectFour {
                     }
                 }
 
+                stopPondering(col);
                 state.makeMove(col); // Apply the player's move
-            } else if (opponentType == 2) {
-                // Random AI's turn
-                System.out.println("AI is making a move...");
-                int col;
-                do {
-                    col = random.nextInt(state.cols); // Randomly select a column
-                } while (!state.getValidMoves().contains(col)); // Ensure the column is not full
-                state.makeMove(col); // Apply the move
-            } else if (opponentType == 3) {
-                // Minimax AI's turn
-                System.out.println("Minimax AI is thinking...");
-                int bestMove = getBestMove(state, 5); // Use Minimax to find the best move with a depth limit of 5
-                state.makeMove(bestMove); // Apply the best move
-            } else if (opponentType == 4) {
-                // Alpha-Beta Pruning AI's turn
-                System.out.println("Alpha-Beta Pruning AI is thinking...");
-                int bestMove = getBestMoveAlphaBeta(state, 5); // Use Alpha-Beta pruning to find the best move
-                state.makeMove(bestMove); // Apply the best move
+            } else {
+                // AI's turn
+                if (opponentType == 2) {
+                    System.out.println("AI is making a move...");
+                } else if (opponentType == 3) {
+                    System.out.println("Minimax AI is thinking...");
+                } else if (opponentType == 4) {
+                    System.out.println("Alpha-Beta Pruning AI is thinking...");
+                }
+                state.makeMove(selectMove(state)); // Apply the AI's move
             }
 
-            // Check for win or draw
-            if (state.checkWin(winCount)) {
+            // Check for win or draw around the token just dropped
+            if (state.lastMoveWins(winCount)) {
                 // If the current player has won
                 printBoard(); // Show the final board state
                 System.out.println("Player " + state.currentPlayer + " wins!");
@@ -85,22 +95,89 @@ public class ConnectFour {
         }
 
         scanner.close(); // Close the scanner to prevent resource leaks
+        if (ponderExecutor != null) {
+            ponderExecutor.shutdown();
+        }
+    }
+
+    // Picks the AI's move for the player to move (either side) with the configured opponent type, and logs its
+    // search metrics when a metrics log is set
+    int selectMove(State state) {
+        SearchMetrics metrics = new SearchMetrics(); // Filled in by this move's search alone
+        int move = chooseMove(state, metrics);
+        lastMetrics = metrics;
+        if (metricsLog != null) {
+            String line = metrics.toJson(engineName(), state, move);
+            try {
+                synchronized (metricsLog) { // Tournament players share one log
+                    metricsLog.write(line);
+                    metricsLog.write('\n');
+                    metricsLog.flush();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return move;
+    }
+
+    // Chooses the move; search AIs play straight from the position database when it holds the position
+    private int chooseMove(State state, SearchMetrics metrics) {
+        if (database != null && opponentType >= 3) {
+            int entry = database.lookup(state);
+            if (entry >= 0) {
+                metrics.source = "database"; // No search
+                int bestMove = PositionDatabase.bestMove(entry);
+                if (verbose) {
+                    System.out.println(" database: " + PositionDatabase.describe(entry));
+                    System.out.println(" @" + (bestMove + 1));
+                }
+                return bestMove;
+            }
+        }
+        switch (opponentType) {
+            case 2:
+                return getRandomMove(state, metrics);
+            case 3:
+                return timeBudgetMillis > 0
+                        ? getBestMoveIterative(state, false, metrics) // Deepen until the time budget runs out
+                        : getBestMove(state, searchDepth, metrics); // Use Minimax with a fixed depth limit
+            case 4:
+                return timeBudgetMillis > 0
+                        ? getBestMoveIterative(state, true, metrics) // Deepen until the time budget runs out
+                        : getBestMoveAlphaBeta(state, searchDepth, metrics); // Use Alpha-Beta pruning with a fixed depth limit
+            case 5:
+                return getBestMoveMcts(state, metrics); // Random playouts within the time or playout budget
+            default:
+                throw new IllegalStateException("Opponent type " + opponentType + " is not an AI");
+        }
+    }
+
+    // Random AI: picks a random column that is not full
+    private int getRandomMove(State state, SearchMetrics metrics) {
+        metrics.source = "random"; // No search
+        int col;
+        do {
+            col = random.nextInt(state.cols); // Randomly select a column
+        } while (!state.canPlay(col)); // Ensure the column is not full
+        return col;
     }
 
     // Prints the current state of the board
     private void printBoard() {
+        char[][] board = state.getBoard(); // Character view of the bitboard
         // Print column numbers
         System.out.print("   "); // Indentation for row numbers
         for (int j = 0; j < state.cols; j++) {
-            System.out.print(" " + (j + 1) + "  "); // Print column numbers (1-based indexing)
+            System.out.printf(" %-3d", j + 1); // Print column numbers (1-based indexing)
         }
         System.out.println();
     
         // Print rows with row numbers
         for (int i = 0; i < state.rows; i++) {
-            System.out.print((i + 1) + " "); // Print the row number (1-based indexing)
+            System.out.printf("%-2d", i + 1); // Print the row number (1-based indexing)
             for (int j = 0; j < state.cols; j++) {
-                System.out.print("| " + state.board[i][j] + " "); // Print the cell content with column dividers
+                System.out.print("| " + board[i][j] + " "); // Print the cell content with column dividers
             }
             System.out.println("|"); // Close the row with a border
         }
@@ -113,154 +190,726 @@ public class ConnectFour {
         System.out.println("-");
     }
 
-    // Evaluates the game state for AI algorithms
-    private int evaluateState(State state) {
-        if (state.checkWin(winCount)) {
-            // Return high/low scores depending on who wins
-            return state.currentPlayer == 'X' ? -100 : 100; // X losing is bad for AI, O winning is good for AI
+    static final int WIN_SCORE = 1_000_000; // Value of a win; State keeps every heuristic score below it
+
+    // Evaluates the game state for AI algorithms; `won` tells whether the last move completed a line
+    static int evaluateState(State state, boolean won) {
+        if (won) {
+            // Return high/low scores depending on who made the winning move; quicker wins score higher
+            int value = WIN_SCORE + (state.rows * state.cols - state.moveCount);
+            return state.getCell(state.lastRow, state.lastCol) == 'X' ? -value : value; // X winning is bad for AI, O winning is good for AI
+        }
+        if (state.isFull()) {
+            return 0; // Draw
+        }
+        return state.score; // Heuristic: open windows and centre control, maintained incrementally by State
+    }
+
+    // Every search fills in its own SearchMetrics, passed down to the code that counts; selectMove() publishes
+    // the finished move's metrics here. Pondering never touches them.
+    private volatile SearchMetrics lastMetrics = new SearchMetrics(); // Metrics of the last move chosen by selectMove()
+    private Writer metricsLog; // Receives one JSON line of metrics per AI move, or null
+    private int[][] moveBuffers = new int[0][]; // One move list per ply below the root, allocated on first use and reused
+    private static final int TABLE_SIZE_BITS = 20; // Transposition table holds 2^20 entries (16 MB)
+    private int tableSizeBits = TABLE_SIZE_BITS; // Size of the transposition table, as a power of two
+    private TranspositionTable table; // Alpha-beta results keyed by Zobrist hash, kept for the whole game
+
+    static final int FIXED_DEPTH = 5; // Search depth used when no time budget is set
+    static final long DEFAULT_TIME_BUDGET_MS = 100; // Default wall-clock budget per AI move
+    private int searchDepth = FIXED_DEPTH; // Depth of the minimax and alpha-beta searches when no time budget is set
+    private long timeBudgetMillis = DEFAULT_TIME_BUDGET_MS; // Per-move budget for iterative deepening (0 = fixed depth)
+    private long deadline = Long.MAX_VALUE; // System.nanoTime() at which the current search must stop
+    private boolean searchAborted; // Set when the deadline passes; the unfinished iteration is discarded
+    private int rootValue; // Value of the move returned by the last searchRoot() call
+    private boolean verbose = true; // Print debug information after each AI move
+    // Search threads (alpha-beta and MCTS). One by default: the Lazy SMP helpers have only been measured on a
+    // single core, where they slow the search down; use --threads and --speedup to try more.
+    private int threads = 1;
+    private ForkJoinPool pool; // Runs the alpha-beta helpers and the MCTS trees, created on first use
+    private AlphaBetaSearch[] searchers; // One alpha-beta searcher per thread (0 = main), reused for every search in the game
+    private int[][] helperMoves; // Root move order of each helper searcher
+    private final AtomicBoolean helperStop = new AtomicBoolean(); // Stops the helpers once the main search is done
+
+    static final int MCTS_PLAYOUTS = 200_000; // Playouts per move when no time budget is set
+    private static final int MCTS_POOL_SIZE = 1 << 20; // Tree nodes shared out between the MCTS threads
+    private int mctsPlayouts = MCTS_PLAYOUTS; // Playouts per move when no time budget is set
+    private MonteCarloTreeSearch[] mctsTrees; // One tree per thread, reused for every move in the game
+    private final Random random = new Random(); // Used for Random AI's move selection
+    private PositionDatabase database; // Solved positions or opening book for this board, if one was built
+    private final AtomicBoolean stop = new AtomicBoolean(); // Stops every alpha-beta search thread at the deadline
+
+    private boolean ponder; // Search during the human's turn (alpha-beta only: it keeps its results in the table)
+    private ExecutorService ponderExecutor; // Runs the pondering search in the background, created on first use
+    private Future<SearchMetrics> ponderTask; // The pondering search in progress, or null
+    private long ponderStart; // System.nanoTime() when pondering started
+    private int ponderMove = -1; // Reply the pondering search expects from the human (-1 = none yet)
+    private int ponderDepth; // Deepest pondering iteration completed
+
+    // Sets the wall-clock budget per AI move; 0 switches back to a fixed-depth search
+    public void setTimeBudgetMillis(long timeBudgetMillis) {
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    // Turns the debug printout after each AI move on or off
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    // Number of states visited by the last search (playouts for MCTS, 0 for the random AI)
+    public long getVisitedStates() {
+        return lastMetrics.nodes;
+    }
+
+    // Metrics of the last AI move
+    SearchMetrics getMetrics() {
+        return lastMetrics;
+    }
+
+    // Writes the metrics of every AI move to `log` as JSON lines (null to stop)
+    void setMetricsLog(Writer log) {
+        this.metricsLog = log;
+    }
+
+    // Names the engine in the metrics log, e.g. alphabeta:8 (fixed depth) or alphabeta@100ms (time budget)
+    private String engineName() {
+        String[] names = {"human", "random", "minimax", "alphabeta", "mcts"};
+        String name = names[opponentType - 1];
+        if (opponentType <= 2) {
+            return name;
+        } else if (timeBudgetMillis > 0) {
+            return name + "@" + timeBudgetMillis + "ms";
+        }
+        return name + ":" + (opponentType == 5 ? mctsPlayouts : searchDepth);
+    }
+
+    // Value of the last minimax or alpha-beta search for the player to move
+    int getRootValue() {
+        return rootValue;
+    }
+
+    // Lets the search AIs answer from a solved-position database or opening book (null to turn it off)
+    void setDatabase(PositionDatabase database) {
+        this.database = database;
+    }
+
+    // Sets the depth of the minimax and alpha-beta searches used when there is no time budget
+    void setSearchDepth(int searchDepth) {
+        this.searchDepth = searchDepth;
+    }
+
+    // Sets the MCTS playouts per move used when there is no time budget
+    void setMctsPlayouts(int mctsPlayouts) {
+        this.mctsPlayouts = mctsPlayouts;
+    }
+
+    // Sets the transposition table size to 2^sizeBits entries (before the first alpha-beta search)
+    void setTableSizeBits(int sizeBits) {
+        this.tableSizeBits = sizeBits;
+    }
+
+    // Empties the transposition table so the next search starts cold
+    void clearTable() {
+        if (table != null) {
+            table.clear();
         }
-        return 0; // Neutral score if no one has won
     }
 
-    private int visitedStates; // Tracks the number of states evaluated during AI computations
+    // Turns pondering (searching while the human thinks) on or off
+    public void setPondering(boolean ponder) {
+        this.ponder = ponder;
+    }
+
+    // Sets how many threads the alpha-beta and MCTS searches use
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    // Counts a visited state and checks the clock every 1024 states
+    private boolean outOfTime(SearchMetrics metrics) {
+        metrics.nodes++; // Increment state counter
+        if ((metrics.nodes & 1023) == 0 && System.nanoTime() > deadline) {
+            searchAborted = true;
+        }
+        return searchAborted;
+    }
 
     // Minimax algorithm: Explores all possible moves to find the optimal one
-    private int minimax(State state, int depth, boolean isMaximizing) {
-        visitedStates++; // Increment state counter
-        if (state.isTerminal(winCount) || depth == 0) {
-            return evaluateState(state); // Evaluate the state if terminal or depth limit reached
-        }
-
-        if (isMaximizing) {
-            int maxEval = Integer.MIN_VALUE;
-            for (int move : state.getValidMoves()) {
-                State childState = state.cloneState();
-                childState.makeMove(move);
-                childState.switchPlayer();
-                int eval = minimax(childState, depth - 1, false); // Evaluate as minimizing player
-                maxEval = Math.max(maxEval, eval);
+    private int minimax(State state, int depth, int ply, boolean isMaximizing, SearchMetrics metrics) {
+        if (outOfTime(metrics)) {
+            return 0; // Result is discarded
+        }
+        boolean won = metrics.lastMoveWins(state, winCount); // Only lines through the last token can be new wins
+        if (won || depth == 0 || state.isFull()) {
+            if (SearchMetrics.ENABLED) {
+                metrics.leafEvaluations++;
             }
-            return maxEval;
-        } else {
-            int minEval = Integer.MAX_VALUE;
-            for (int move : state.getValidMoves()) {
-                State childState = state.cloneState();
-                childState.makeMove(move);
-                childState.switchPlayer();
-                int eval = minimax(childState, depth - 1, true); // Evaluate as maximizing player
-                minEval = Math.min(minEval, eval);
+            return evaluateState(state, won); // Evaluate the state if terminal or depth limit reached
+        }
+
+        int[] moves = plyMoves(ply, state.cols);
+        int moveCount = state.getValidMoves(moves);
+        int bestEval = isMaximizing ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        if (SearchMetrics.ENABLED) {
+            metrics.expandedNodes++;
+            metrics.movesSearched += moveCount;
+        }
+        for (int i = 0; i < moveCount; i++) {
+            int move = moves[i];
+            state.makeMove(move);
+            state.switchPlayer();
+            int eval = minimax(state, depth - 1, ply + 1, !isMaximizing, metrics); // Evaluate as the other player
+            state.switchPlayer();
+            state.unmakeMove(move);
+            if (searchAborted) {
+                return 0;
             }
-            return minEval;
+            bestEval = isMaximizing ? Math.max(bestEval, eval) : Math.min(bestEval, eval);
         }
+        return bestEval;
     }
 
-    // Finds the best move using Minimax
-    private int getBestMove(State state, int depth) {
-        visitedStates = 0; // Reset visited states counter
-        long startTime = System.nanoTime(); // Start the timer
+    // The move list for `ply` plies below the root, allocated the first time a search gets that deep
+    private int[] plyMoves(int ply, int cols) {
+        if (ply >= moveBuffers.length) {
+            moveBuffers = Arrays.copyOf(moveBuffers, Math.max(ply + 1, 2 * moveBuffers.length));
+        }
+        if (moveBuffers[ply] == null) {
+            moveBuffers[ply] = new int[cols];
+        }
+        return moveBuffers[ply];
+    }
+
+    // In a position that is its own mirror image, column c and column (cols - 1 - c) lead to mirrored positions
+    // of equal value, so only the left half (and the centre) is searched. Returns the new move count.
+    private static int dropMirroredMoves(State state, int[] moves, int moveCount) {
+        if (!state.isSymmetric()) {
+            return moveCount;
+        }
+        int kept = 0;
+        for (int i = 0; i < moveCount; i++) {
+            if (2 * moves[i] <= state.cols - 1) {
+                moves[kept++] = moves[i];
+            }
+        }
+        return kept;
+    }
+
+    // Moves `move` to the front of the move list if it is present
+    private static void moveToFront(int[] moves, int moveCount, int move) {
+        for (int i = 1; i < moveCount; i++) {
+            if (moves[i] == move) {
+                moves[i] = moves[0];
+                moves[0] = move;
+                return;
+            }
+        }
+    }
 
+    // Searches every root move to the given depth and returns the best one (or -1 if aborted); `firstMove` is tried first
+    // and the search's counters are added to `metrics`
+    private int searchRoot(State state, int depth, int firstMove, boolean useAlphaBeta, SearchMetrics metrics) {
+        if (useAlphaBeta) {
+            return searchRootParallel(state, depth, firstMove, metrics);
+        }
         int bestMove = -1; // Store the best move
         int bestValue = Integer.MIN_VALUE;
-
-        for (int move : state.getValidMoves()) {
-            State childState = state.cloneState();
-            childState.makeMove(move);
-            childState.switchPlayer();
-            int moveValue = minimax(childState, depth - 1, false); // Evaluate using Minimax
+        boolean maximizing = state.currentPlayer == 'O'; // Values are scored from 'O''s point of view
+        int sign = maximizing ? 1 : -1; // Turns them into values for the player to move
+
+        int[] moves = plyMoves(0, state.cols);
+        int moveCount = dropMirroredMoves(state, moves, state.getValidMoves(moves));
+        moveToFront(moves, moveCount, firstMove);
+        for (int i = 0; i < moveCount; i++) {
+            int move = moves[i];
+            state.makeMove(move);
+            state.switchPlayer();
+            int moveValue = sign * minimax(state, depth - 1, 1, !maximizing, metrics); // Evaluate using Minimax
+            state.switchPlayer();
+            state.unmakeMove(move);
+            if (searchAborted) {
+                return -1;
+            }
             if (moveValue > bestValue) { // Update the best move
                 bestValue = moveValue;
                 bestMove = move;
             }
         }
+        rootValue = bestValue;
+        return bestMove;
+    }
 
-        long endTime = System.nanoTime(); // End the timer
-        double elapsedTime = (endTime - startTime) / 1_000_000_000.0; // Convert to seconds
-
-        // Print debug information
-        System.out.println("I’m thinking...");
-        System.out.printf(" visited %d states%n", visitedStates);
-        System.out.printf(" best move: @%d, value: %.6f%n", bestMove + 1, bestValue / 1000.0);
-        System.out.printf(" Elapsed time: %.3f secs%n", elapsedTime);
-        System.out.println(" @" + (bestMove + 1));
+    // Parallel alpha-beta search (Lazy SMP): this thread searches the root moves in order while threads - 1
+    // helpers search the same position to the same depth, each starting from a different root move. No work is
+    // split between them; the helpers fill the shared transposition table with bounds and best moves that let the
+    // other searches cut off sooner and skip positions already searched. Only this thread's result is used, and
+    // the helpers are stopped as soon as it has one. (Helpers a ply deeper changed the chosen move: odd and even
+    // depths disagree with this evaluation.)
+    private int searchRootParallel(State state, int depth, int firstMove, SearchMetrics metrics) {
+        int[] moves = plyMoves(0, state.cols);
+        int moveCount = dropMirroredMoves(state, moves, state.getOrderedMoves(moves)); // Centre columns first
+        moveToFront(moves, moveCount, firstMove); // Then the best move of the previous iteration
+
+        if (searchers == null || searchers.length != threads) {
+            searchers = new AlphaBetaSearch[threads];
+            helperMoves = new int[threads][state.cols];
+            for (int i = 0; i < threads; i++) {
+                searchers[i] = new AlphaBetaSearch(state, winCount, table, i == 0 ? stop : helperStop);
+            }
+        }
 
+        helperStop.set(false);
+        List<Callable<Integer>> helpers = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            AlphaBetaSearch helper = searchers[i];
+            int[] order = helperMoves[i];
+            for (int j = 0; j < moveCount; j++) {
+                order[j] = moves[(i + j) % moveCount]; // Rotated so the helpers start apart
+            }
+            helper.reset(state, deadline);
+            helpers.add(() -> helper.searchRoot(order, moveCount, depth));
+        }
+        List<Future<Integer>> running = startTasks(helpers);
+
+        AlphaBetaSearch main = searchers[0];
+        main.reset(state, deadline);
+        int bestMove;
+        try {
+            bestMove = main.searchRoot(moves, moveCount, depth);
+        } finally {
+            helperStop.set(true);
+            awaitTasks(running);
+        }
+        for (AlphaBetaSearch searcher : searchers) {
+            metrics.add(searcher.metrics); // The searchers' per-thread counters
+        }
+        if (main.isAborted()) {
+            searchAborted = true;
+            return -1;
+        }
+        rootValue = main.value;
         return bestMove;
     }
 
-    // Alpha-Beta Pruning algorithm: Optimized Minimax with pruning
-    private int alphaBeta(State state, int depth, int alpha, int beta, boolean isMaximizing) {
-        visitedStates++; // Increment state counter
-        if (state.isTerminal(winCount) || depth == 0) {
-            return evaluateState(state);
-        }
-
-        if (isMaximizing) {
-            int maxEval = Integer.MIN_VALUE;
-            for (int move : state.getValidMoves()) {
-                State childState = state.cloneState();
-                childState.makeMove(move);
-                childState.switchPlayer();
-                int eval = alphaBeta(childState, depth - 1, alpha, beta, false); // Evaluate as minimizing player
-                maxEval = Math.max(maxEval, eval);
-                alpha = Math.max(alpha, eval); // Update alpha
-                if (beta <= alpha) {
-                    break; // Prune remaining branches
+    // Runs the tasks on the search thread pool (or on this thread when single-threaded) and waits for all of them
+    private <T> void runTasks(List<Callable<T>> tasks) {
+        if (threads == 1) {
+            for (Callable<T> task : tasks) {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException("Search failed", e);
                 }
             }
-            return maxEval;
-        } else {
-            int minEval = Integer.MAX_VALUE;
-            for (int move : state.getValidMoves()) {
-                State childState = state.cloneState();
-                childState.makeMove(move);
-                childState.switchPlayer();
-                int eval = alphaBeta(childState, depth - 1, alpha, beta, true); // Evaluate as maximizing player
-                minEval = Math.min(minEval, eval);
-                beta = Math.min(beta, eval); // Update beta
-                if (beta <= alpha) {
-                    break; // Prune remaining branches
-                }
+            return;
+        }
+        awaitTasks(startTasks(tasks));
+    }
+
+    // Submits the tasks to the search thread pool, created on first use
+    private <T> List<Future<T>> startTasks(List<Callable<T>> tasks) {
+        List<Future<T>> running = new ArrayList<>();
+        if (tasks.isEmpty()) {
+            return running;
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(threads);
+        }
+        for (Callable<T> task : tasks) {
+            running.add(pool.submit(task));
+        }
+        return running;
+    }
+
+    // Waits for every submitted task to finish
+    private <T> void awaitTasks(List<Future<T>> running) {
+        try {
+            for (Future<T> result : running) {
+                result.get(); // Rethrows a failure from any search thread
             }
-            return minEval;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop.set(true);
+            helperStop.set(true);
+            searchAborted = true;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Parallel search failed", e.getCause());
         }
     }
 
-    // Finds the best move using Alpha-Beta Pruning
-    private int getBestMoveAlphaBeta(State state, int depth) {
-        visitedStates = 0; // Reset visited states counter
+    // Finds the best move using Minimax; the search's counters are added to `metrics`
+    int getBestMove(State state, int depth, SearchMetrics metrics) {
+        searchAborted = false;
+        deadline = Long.MAX_VALUE; // Fixed depth: no time limit
+        long startBytes = allocatedBytes();
         long startTime = System.nanoTime(); // Start the timer
 
-        int bestMove = -1; // Store the best move
-        int bestValue = Integer.MIN_VALUE;
-        int alpha = Integer.MIN_VALUE;
-        int beta = Integer.MAX_VALUE;
-
-        for (int move : state.getValidMoves()) {
-            State childState = state.cloneState();
-            childState.makeMove(move);
-            childState.switchPlayer();
-            int moveValue = alphaBeta(childState, depth - 1, alpha, beta, false); // Evaluate using Alpha-Beta pruning
-            if (moveValue > bestValue) { // Update the best move
-                bestValue = moveValue;
-                bestMove = move;
+        int bestMove = searchRoot(state, depth, -1, false, metrics);
+
+        recordSearch(metrics, depth, 1, startTime, startBytes);
+        printSearchInfo(metrics, false, bestMove, rootValue);
+        return bestMove;
+    }
+
+    // Finds the best move using Alpha-Beta Pruning; the search's counters are added to `metrics`
+    int getBestMoveAlphaBeta(State state, int depth, SearchMetrics metrics) {
+        searchAborted = false;
+        deadline = Long.MAX_VALUE; // Fixed depth: no time limit
+        stop.set(false);
+        prepareTable();
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime(); // Start the timer
+
+        int bestMove = searchRoot(state, depth, -1, true, metrics);
+
+        recordSearch(metrics, depth, threads, startTime, startBytes);
+        printSearchInfo(metrics, true, bestMove, rootValue);
+        return bestMove;
+    }
+
+    // Finds the best move by iterative deepening until the time budget runs out; the result of the
+    // last completed depth is returned, and each iteration starts with the previous iteration's best move.
+    // The counters of every iteration are added to `metrics`.
+    int getBestMoveIterative(State state, boolean useAlphaBeta, SearchMetrics metrics) {
+        searchAborted = false;
+        deadline = Long.MAX_VALUE; // Depth 1 always completes so there is a move to play
+        if (useAlphaBeta) {
+            stop.set(false);
+            prepareTable();
+        }
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime(); // Start the timer
+
+        int bestMove = -1;
+        int bestValue = 0;
+        int depthReached = 0;
+        int maxDepth = state.rows * state.cols - state.moveCount; // Deeper than the empty cells is pointless
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int move = searchRoot(state, depth, bestMove, useAlphaBeta, metrics); // Previous best move first
+            if (searchAborted) {
+                break; // Keep the result of the last completed depth
+            }
+            bestMove = move;
+            bestValue = rootValue;
+            depthReached = depth;
+            if (Math.abs(bestValue) >= WIN_SCORE) {
+                break; // A forced win or loss was found; deeper searches cannot change it
+            }
+            deadline = startTime + timeBudgetMillis * 1_000_000;
+            if (System.nanoTime() >= deadline) {
+                break;
             }
-            alpha = Math.max(alpha, moveValue); // Update alpha
         }
 
-        long endTime = System.nanoTime(); // End the timer
-        double elapsedTime = (endTime - startTime) / 1_000_000_000.0; // Convert to seconds
+        recordSearch(metrics, depthReached, useAlphaBeta ? threads : 1, startTime, startBytes);
+        printSearchInfo(metrics, useAlphaBeta, bestMove, bestValue);
+        return bestMove;
+    }
 
-        // Print debug information
-        System.out.println("Alpha-Beta Pruning AI is thinking...");
-        System.out.printf(" visited %d states%n", visitedStates);
-        System.out.printf(" best move: @%d, value: %.6f%n", bestMove + 1, bestValue / 1000.0);
+    // Finds the best move with Monte Carlo Tree Search: one tree per thread (root parallelism), each running
+    // random playouts until the time budget (or, with no budget, the playout budget) is used up. The playouts are
+    // recorded in `metrics`.
+    int getBestMoveMcts(State state, SearchMetrics metrics) {
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime(); // Start the timer
+        long deadline = timeBudgetMillis > 0 ? startTime + timeBudgetMillis * 1_000_000 : Long.MAX_VALUE;
+        long playoutsPerTree = timeBudgetMillis > 0 ? Long.MAX_VALUE : (mctsPlayouts + threads - 1) / threads;
+        if (mctsTrees == null) {
+            // Each playout adds at most one node's children, so a playout budget bounds the tree size
+            int capacity = timeBudgetMillis > 0 ? MCTS_POOL_SIZE / threads
+                    : (int) Math.min(MCTS_POOL_SIZE / threads, (playoutsPerTree + 1) * state.cols + 1);
+            mctsTrees = new MonteCarloTreeSearch[threads];
+            for (int i = 0; i < threads; i++) {
+                long seed = System.nanoTime() + i * 0x9E3779B97F4A7C15L; // Different random playouts per tree
+                mctsTrees[i] = new MonteCarloTreeSearch(state, capacity, seed);
+            }
+        }
+
+        List<Callable<MonteCarloTreeSearch>> tasks = new ArrayList<>();
+        for (MonteCarloTreeSearch tree : mctsTrees) {
+            tree.reset(state);
+            tasks.add(() -> {
+                tree.run(deadline, playoutsPerTree);
+                return tree;
+            });
+        }
+        runTasks(tasks);
+
+        // The most visited root move is the most reliable one
+        int bestMove = -1;
+        long bestVisits = -1;
+        double bestRewards = 0;
+        long playouts = 0;
+        for (MonteCarloTreeSearch tree : mctsTrees) {
+            playouts += tree.playouts;
+        }
+        metrics.nodes = playouts;
+        metrics.leafEvaluations = playouts; // Every playout scores one finished game
+        for (int col = 0; col < state.cols; col++) {
+            if (!state.canPlay(col)) {
+                continue;
+            }
+            long visits = 0;
+            double rewards = 0;
+            for (MonteCarloTreeSearch tree : mctsTrees) {
+                visits += tree.childVisits(col);
+                rewards += tree.childRewards(col);
+            }
+            if (visits > bestVisits) {
+                bestVisits = visits;
+                bestRewards = rewards;
+                bestMove = col;
+            }
+        }
+
+        recordSearch(metrics, 0, threads, startTime, startBytes);
+        double elapsedTime = metrics.elapsedNanos / 1_000_000_000.0; // Convert to seconds
+        if (!verbose) {
+            return bestMove;
+        }
+        System.out.println("Monte Carlo Tree Search AI is thinking...");
+        System.out.printf(" %d playouts (%.0f playouts/sec), %d threads%n", playouts, playouts / elapsedTime, threads);
+        System.out.printf(" best move: @%d, %d visits, win rate: %.3f%n",
+                bestMove + 1, bestVisits, bestVisits == 0 ? 0 : bestRewards / bestVisits);
         System.out.printf(" Elapsed time: %.3f secs%n", elapsedTime);
         System.out.println(" @" + (bestMove + 1));
-
         return bestMove;
     }
 
+    // Starts pondering: while the human thinks, a background thread deepens an alpha-beta search of the position
+    // with the human to move. Every reply the human might play is a subtree of that search, so the AI's own search
+    // after the move finds its positions in the transposition table; the most likely reply is searched deepest.
+    void startPondering(State state) {
+        if (!ponder || opponentType != 4 || state.isFull()) {
+            return;
+        }
+        if (ponderExecutor == null) {
+            ponderExecutor = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "ponder");
+                thread.setDaemon(true); // Never keeps the program alive
+                return thread;
+            });
+        }
+        State position = state.cloneState(); // The game state changes when the human moves
+        stop.set(false); // Raised only by stopPondering(), never reset by the pondering search itself
+        ponderMove = -1;
+        ponderDepth = 0;
+        ponderStart = System.nanoTime();
+        ponderTask = ponderExecutor.submit(() -> ponder(position));
+    }
+
+    // Stops pondering once the human has chosen `humanMove`, and waits until the search threads are idle
+    void stopPondering(int humanMove) {
+        if (ponderTask == null) {
+            return;
+        }
+        stop.set(true);
+        SearchMetrics pondered;
+        try {
+            pondered = ponderTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Pondering failed", e.getCause());
+        } finally {
+            ponderTask = null;
+        }
+        if (verbose) {
+            System.out.printf(" pondered %.3f secs to depth %d (%d states), expected @%d: %s%n",
+                    (System.nanoTime() - ponderStart) / 1_000_000_000.0, ponderDepth, pondered.nodes,
+                    ponderMove + 1, ponderMove == humanMove ? "hit" : "miss");
+        }
+    }
+
+    // The pondering search: iterative deepening with no deadline, until stopped or the result is known. Returns
+    // its own metrics, so the metrics of the AI's moves count only their own searches.
+    private SearchMetrics ponder(State position) {
+        SearchMetrics metrics = new SearchMetrics();
+        searchAborted = false;
+        deadline = Long.MAX_VALUE;
+        prepareTable();
+        int maxDepth = position.rows * position.cols - position.moveCount;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int move = searchRoot(position, depth, ponderMove, true, metrics);
+            if (searchAborted) {
+                break;
+            }
+            ponderMove = move;
+            ponderDepth = depth;
+            if (Math.abs(rootValue) >= WIN_SCORE) {
+                break;
+            }
+        }
+        metrics.depth = ponderDepth;
+        return metrics;
+    }
+
+    // Creates the transposition table on first use and starts a new search generation
+    private void prepareTable() {
+        if (table == null) {
+            table = new TranspositionTable(tableSizeBits); // Allocated on the first alpha-beta search
+        }
+        table.newSearch();
+    }
+
+    // Fills in the metrics that describe the whole move rather than the search threads' work
+    private static void recordSearch(SearchMetrics metrics, int depth, int searchThreads, long startTime, long startBytes) {
+        metrics.depth = depth;
+        metrics.threads = searchThreads;
+        metrics.elapsedNanos = System.nanoTime() - startTime;
+        metrics.allocatedBytes = allocatedBytes() - startBytes;
+    }
+
+    // Prints debug information about the search that just finished
+    private void printSearchInfo(SearchMetrics metrics, boolean useAlphaBeta, int bestMove, int bestValue) {
+        if (!verbose) {
+            return;
+        }
+        System.out.println(useAlphaBeta ? "Alpha-Beta Pruning AI is thinking..." : "I’m thinking...");
+        System.out.printf(" visited %d states (%.0f states/sec), %d threads%n",
+                metrics.nodes, metrics.nodesPerSecond(), metrics.threads);
+        if (SearchMetrics.ENABLED) {
+            System.out.printf(" %d leaf evaluations, %d cutoffs, branching factor %.2f (effective %.2f)%n",
+                    metrics.leafEvaluations, metrics.cutoffs, metrics.branchingFactor(),
+                    metrics.effectiveBranchingFactor());
+            if (useAlphaBeta) {
+                System.out.printf(" TT hits: %d of %d probes (%.1f%%)%n",
+                        metrics.ttHits, metrics.ttProbes, metrics.ttHitRate() * 100);
+            }
+            System.out.printf(" win checks: %d, %.1f%% of search time%n", metrics.winChecks, metrics.winCheckShare() * 100);
+        }
+        System.out.printf(" best move: @%d, value: %.6f%n", bestMove + 1, bestValue / 1000.0);
+        System.out.printf(" Elapsed time: %.3f secs (depth %d)%n", metrics.elapsedNanos / 1_000_000_000.0, metrics.depth);
+        System.out.printf(" Allocated: %d bytes (%.3f per state)%n",
+                metrics.allocatedBytes, (double) metrics.allocatedBytes / metrics.nodes);
+        System.out.println(" @" + (bestMove + 1));
+    }
+
+    // Times the same fixed-depth alpha-beta search of the empty 6x7x4 board with 1, 2, 4 and 8 threads, and
+    // reports the speedup in time to depth and in states visited per second (summed over the threads)
+    static void reportParallelSpeedup(int depth) {
+        System.out.printf("Parallel alpha-beta speedup, 6x7x4 empty board, depth %d (%d cores)%n",
+                depth, Runtime.getRuntime().availableProcessors());
+        double baseline = 0, baselineRate = 0;
+        for (int threads = 0; threads <= 8; threads = Math.max(1, threads * 2)) { // 0 = untimed JIT warm-up
+            ConnectFour game = new ConnectFour(6, 7, 4, 4); // Fresh transposition table for every run
+            game.setThreads(threads);
+            game.searchAborted = false;
+            game.stop.set(false);
+            game.prepareTable();
+            SearchMetrics metrics = new SearchMetrics();
+            long startTime = System.nanoTime();
+            int bestMove = game.searchRoot(game.state, depth, -1, true, metrics);
+            double elapsedTime = (System.nanoTime() - startTime) / 1_000_000_000.0;
+            double rate = metrics.nodes / elapsedTime;
+            if (threads == 0) {
+                continue;
+            } else if (threads == 1) {
+                baseline = elapsedTime;
+                baselineRate = rate;
+            }
+            System.out.printf(" %d threads: %.3f secs, visited %d states, best move @%d, speedup %.2fx (states/sec %.2fx)%n",
+                    threads, elapsedTime, metrics.nodes, bestMove + 1, baseline / elapsedTime, rate / baselineRate);
+            if (game.pool != null) {
+                game.pool.shutdown();
+            }
+        }
+    }
+
+    // Plays 6x7x4 games between a fixed-depth alpha-beta AI ('O') and a depth-6 alpha-beta opponent that takes
+    // `thinkMillis` per move, without and then with pondering, and reports the AI's time to move after each reply
+    static void reportPondering(int depth, int thinkMillis) {
+        System.out.printf("Pondering, 6x7x4, alpha-beta depth %d, opponent thinks %d ms per move (%d cores)%n",
+                depth, thinkMillis, Runtime.getRuntime().availableProcessors());
+        for (int run = 0; run < 3; run++) { // Run 0 is an untimed JIT warm-up
+            boolean pondering = run == 2;
+            ConnectFour game = new ConnectFour(6, 7, 4, 4);
+            game.setVerbose(false);
+            game.setTimeBudgetMillis(0);
+            game.setSearchDepth(depth);
+            game.setPondering(pondering);
+            ConnectFour opponent = new ConnectFour(6, 7, 4, 4);
+            opponent.setVerbose(false);
+            opponent.setTimeBudgetMillis(0);
+            opponent.setSearchDepth(6);
+            State state = game.state;
+
+            long totalNanos = 0, maxNanos = 0;
+            int aiMoves = 0, hits = 0;
+            while (true) {
+                int reply = opponent.selectMove(state); // Chosen up front; the thinking time is simulated
+                game.startPondering(state);
+                try {
+                    Thread.sleep(thinkMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                game.stopPondering(reply);
+                hits += game.ponderMove == reply ? 1 : 0;
+                state.makeMove(reply);
+                if (state.lastMoveWins(4) || state.isFull()) {
+                    break;
+                }
+                state.switchPlayer();
+
+                long startTime = System.nanoTime();
+                state.makeMove(game.selectMove(state));
+                long elapsed = System.nanoTime() - startTime;
+                totalNanos += elapsed;
+                maxNanos = Math.max(maxNanos, elapsed);
+                aiMoves++;
+                if (state.lastMoveWins(4) || state.isFull()) {
+                    break;
+                }
+                state.switchPlayer();
+            }
+            if (run == 0) {
+                continue;
+            }
+            System.out.printf(" %s: %d AI moves, time to move %.1f ms average, %.1f ms worst%s%n",
+                    pondering ? "with pondering   " : "without pondering", aiMoves, totalNanos / 1e6 / aiMoves,
+                    maxNanos / 1e6, pondering ? String.format(", %d of %d replies predicted", hits, aiMoves) : "");
+        }
+    }
+
+    // Returns the bytes allocated so far by the calling thread, or 0 if the JVM cannot tell
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
     // Main method: Entry point of the program
     public static void main(String[] args) {
+        // Optional flags: --budget <ms> sets the AI's time per move (0 = fixed depth search),
+        // --threads <n> sets the search threads, --speedup [depth] reports the parallel alpha-beta speedup and exits,
+        // --ponder lets the Alpha-Beta AI search during the human's turn, --ponder-report [depth] measures the effect,
+        // --metrics <file> appends the AI's search metrics to the file as one JSON line per move
+        long timeBudgetMillis = DEFAULT_TIME_BUDGET_MS;
+        int threads = 1;
+        boolean ponder = false;
+        String metricsFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--budget") && i + 1 < args.length) {
+                timeBudgetMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--speedup")) {
+                reportParallelSpeedup(i + 1 < args.length ? Integer.parseInt(args[i + 1]) : 12);
+                return;
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metricsFile = args[++i];
+            } else if (args[i].equals("--ponder")) {
+                ponder = true;
+            } else if (args[i].equals("--ponder-report")) {
+                reportPondering(i + 1 < args.length ? Integer.parseInt(args[i + 1]) : 12, 250);
+                return;
+            }
+        }
+
         Scanner scanner = new Scanner(System.in);
 
         // Game type selection
@@ -268,6 +917,7 @@ public class ConnectFour {
         System.out.println("1. Tiny 3x3x3 Connect-Three");
         System.out.println("2. Wider 3x5x3 Connect-Three");
         System.out.println("3. Standard 6x7x4 Connect-Four");
+        System.out.println("4. Custom board (e.g. 10x12 Connect-Five)");
 
         System.out.print("Choice: ");
         int choice = scanner.nextInt();
@@ -290,6 +940,22 @@ public class ConnectFour {
                 cols = 7;
                 winCount = 4;
                 break;
+            case 4:
+                while (true) { // Ask again until the board is within the engines' limits
+                    System.out.print("Rows (1-" + State.MAX_ROWS + "): ");
+                    rows = scanner.nextInt();
+                    System.out.print("Columns (1-" + State.MAX_COLS + ", at most " + State.MAX_CELLS + " cells): ");
+                    cols = scanner.nextInt();
+                    System.out.print("Tokens in a row to win: ");
+                    winCount = scanner.nextInt();
+                    try {
+                        State.checkSize(rows, cols, winCount);
+                        break;
+                    } catch (IllegalArgumentException e) {
+                        System.out.println(e.getMessage() + ". Try again.");
+                    }
+                }
+                break;
             default:
                 System.out.println("Invalid choice. Defaulting to Tiny 3x3x3.");
                 rows = 3;
@@ -304,17 +970,35 @@ public class ConnectFour {
         System.out.println("2. An agent that plays randomly");
         System.out.println("3. An agent that uses MINIMAX");
         System.out.println("4. An agent that uses MINIMAX with alpha-beta pruning");
+        System.out.println("5. An agent that uses Monte Carlo Tree Search");
 
         System.out.print("Choice: ");
         int opponentType = scanner.nextInt();
-        if (opponentType < 1 || opponentType > 4) {
+        if (opponentType < 1 || opponentType > 5) {
             System.out.println("Invalid choice. Defaulting to Normal (2 user inputs).");
             opponentType = 1;
         }
 
         // Start the game
         ConnectFour game = new ConnectFour(rows, cols, winCount, opponentType);
-        game.playGame(); // Begin the game loop
+        game.setTimeBudgetMillis(timeBudgetMillis);
+        game.setThreads(threads);
+        game.setPondering(ponder);
+        try {
+            game.setDatabase(PositionDatabase.load(rows, cols, winCount)); // Built offline by `make book`
+        } catch (IOException e) {
+            System.out.println("Position database not loaded: " + e.getMessage());
+        }
+        if (metricsFile == null) {
+            game.playGame(); // Begin the game loop
+        } else {
+            try (Writer log = new BufferedWriter(new FileWriter(metricsFile, true))) {
+                game.setMetricsLog(log);
+                game.playGame(); // Begin the game loop
+            } catch (IOException e) {
+                System.out.println("Metrics log failed: " + e.getMessage());
+            }
+        }
         scanner.close(); // Close the scanner
     }
 }
@@ -0,0 +1,441 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Game server, run with `make serve` (or `java GameServer [options]`): hosts many concurrent games over a line
+// protocol on a local socket. Every connection is one session with its own thread (a virtual thread on Java 21
+// and later, a pooled platform thread before that) that only parses commands and waits. AI moves run on a fixed
+// pool of CPU threads with a bounded queue; when the queue is full the request is answered with BUSY instead of
+// waiting (backpressure), and every search stops at the request's time budget, so a slow search holds one CPU
+// thread for at most its budget and cannot starve the other sessions.
+// Protocol: one command per line, one reply line per command, columns 1-based:
+//   NEW <rows>x<cols>x<winCount> <engine> [X|O]   new game against random, minimax, alphabeta or mcts, the AI
+//                                                 playing O (default) or X           -> OK - PLAYING
+//   PLAY <column> [budget ms]                     play a move and get the AI's reply  -> OK <AI move or -> <status>
+//   GO [budget ms]                                let the AI move (when it plays X)   -> OK <AI move> <status>
+//   BOARD                                         -> OK <rows from the top, separated by '/', '.' for empty cells>
+//   STATS                                         -> OK sessions=<n> games=<n> moves=<n> busy=<n> ...
+//   QUIT                                          -> BYE
+// where status is PLAYING, X_WINS, O_WINS or DRAW. Errors are answered with ERR <message>. BUSY means the AI
+// move was not started because the CPU queue is full; nothing was played and the request can be retried.
+// Boards must be within State.checkSize(): at most 63 rows, 255 columns and 4096 cells.
+public class GameServer {
+    static final int DEFAULT_PORT = 4000;
+    static final long DEFAULT_BUDGET_MS = 50; // AI time per move when the request gives none
+    static final long MAX_BUDGET_MS = 1000; // Longest budget a request may ask for
+    static final int MAX_SESSIONS = 10_000; // Connections beyond this are answered with BUSY and closed
+    private static final int IDLE_TIMEOUT_MS = 5 * 60 * 1000; // Sessions silent for this long are closed
+    private static final int ENGINE_TABLE_BITS = 18; // Transposition table per cached engine (4 MB)
+    private static final int ENGINES_PER_WORKER = 8; // Cached engines (board and engine type) per CPU thread
+
+    // One game: the position and the AI's side. Only the session thread touches it, except while a CPU thread
+    // searches it and the session thread waits for the result.
+    private static final class Session {
+        State state; // Null until NEW
+        int opponentType; // As in ConnectFour (2 = Random, 3 = Minimax, 4 = Alpha-Beta, 5 = MCTS)
+        char aiPlayer; // 'X' or 'O'
+        String status = "PLAYING"; // PLAYING, X_WINS, O_WINS or DRAW
+    }
+
+    private final int workers; // CPU threads for AI moves
+    private final ThreadPoolExecutor cpuPool; // Runs AI moves, with a bounded queue
+    private final ExecutorService sessionExecutor; // One thread per session
+    // Search engines of each CPU thread, keyed by board and engine type. Engines keep their transposition table
+    // and MCTS trees between moves, so caching them per thread rather than per session keeps memory independent
+    // of the number of sessions; positions from different games of the same board share table entries safely.
+    private final ThreadLocal<Map<String, ConnectFour>> engines = ThreadLocal.withInitial(HashMap::new);
+    private ServerSocket serverSocket;
+    long defaultBudgetMillis = DEFAULT_BUDGET_MS;
+    long maxBudgetMillis = MAX_BUDGET_MS;
+    int maxSessions = MAX_SESSIONS;
+
+    // Server statistics, reported by STATS
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicLong games = new AtomicLong(); // Games started
+    private final AtomicLong moves = new AtomicLong(); // AI moves played
+    private final AtomicLong busy = new AtomicLong(); // Requests answered with BUSY
+    private final AtomicLong queueNanos = new AtomicLong(); // Time AI moves waited for a CPU thread
+    private final AtomicLong searchNanos = new AtomicLong(); // Time AI moves spent searching
+
+    // Constructor: Creates a server with `workers` CPU threads and room for `queueCapacity` waiting AI moves
+    public GameServer(int workers, int queueCapacity) {
+        this.workers = Math.max(1, workers);
+        this.cpuPool = new ThreadPoolExecutor(this.workers, this.workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), new ThreadPoolExecutor.AbortPolicy());
+        this.sessionExecutor = newSessionExecutor();
+    }
+
+    // One thread per task: a virtual thread per task on Java 21 and later, found by reflection so the code
+    // compiles and runs on older JDKs, which get a cached pool of platform threads instead
+    static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // Starts accepting connections on the loopback interface (port 0 picks a free port) and returns the port
+    public int start(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "GameServer-accept");
+        acceptor.start();
+        return serverSocket.getLocalPort();
+    }
+
+    // Stops accepting connections, closes the sessions and stops the CPU threads
+    public void close() throws IOException {
+        serverSocket.close();
+        sessionExecutor.shutdownNow();
+        cpuPool.shutdownNow();
+    }
+
+    // Hands every new connection to its own session thread until the server socket is closed
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sessionExecutor.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                return; // Closed while accepting
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.out.println("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Runs one session: reads commands until QUIT, end of input or the idle timeout
+    private void serve(Socket socket) {
+        int active = activeSessions.incrementAndGet();
+        try (Socket connection = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+            connection.setTcpNoDelay(true);
+            connection.setSoTimeout(IDLE_TIMEOUT_MS);
+            if (active > maxSessions) {
+                busy.incrementAndGet();
+                reply(out, "BUSY too many sessions");
+                return;
+            }
+            Session session = new Session();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String reply;
+                try {
+                    reply = handle(session, line.trim());
+                } catch (RuntimeException | Error e) { // A bug or out of memory: answer, and drop the game it hit
+                    System.out.println("Session error: " + e);
+                    session.state = null;
+                    reply = "ERR internal error, start a NEW game: " + e;
+                }
+                reply(out, reply);
+                if (reply.equals("BYE")) {
+                    return;
+                }
+            }
+        } catch (SocketTimeoutException | SocketException e) {
+            // Idle or disconnected client
+        } catch (IOException e) {
+            System.out.println("Session failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Server closing
+        } finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    private static void reply(Writer out, String reply) throws IOException {
+        out.write(reply);
+        out.write('\n');
+        out.flush();
+    }
+
+    // Executes one command and returns the reply line
+    private String handle(Session session, String line) throws InterruptedException {
+        String[] words = line.split("\\s+");
+        try {
+            switch (words[0].toUpperCase()) {
+                case "NEW":
+                    return newGame(session, words);
+                case "PLAY":
+                    return play(session, words);
+                case "GO":
+                    return go(session, words);
+                case "BOARD":
+                    return board(session);
+                case "STATS":
+                    return stats();
+                case "QUIT":
+                    return "BYE";
+                default:
+                    return "ERR unknown command " + words[0];
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return "ERR " + e.getMessage();
+        }
+    }
+
+    // NEW <rows>x<cols>x<winCount> <engine> [X|O]
+    private String newGame(Session session, String[] words) {
+        if (words.length < 3) {
+            throw new IllegalArgumentException("usage: NEW <rows>x<cols>x<winCount> <engine> [X|O]");
+        }
+        String[] size = words[1].toLowerCase().split("x");
+        if (size.length != 3) {
+            throw new IllegalArgumentException("board must be <rows>x<cols>x<winCount>");
+        }
+        int rows = Integer.parseInt(size[0]);
+        int cols = Integer.parseInt(size[1]);
+        int winCount = Integer.parseInt(size[2]);
+        State.checkSize(rows, cols, winCount); // The limits of the engines, checked before anything is allocated
+        int opponentType;
+        switch (words[2].toLowerCase()) {
+            case "random":
+                opponentType = 2;
+                break;
+            case "minimax":
+                opponentType = 3;
+                break;
+            case "alphabeta":
+                opponentType = 4;
+                break;
+            case "mcts":
+                opponentType = 5;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown engine " + words[2]);
+        }
+        char aiPlayer = words.length > 3 ? Character.toUpperCase(words[3].charAt(0)) : 'O';
+        if (aiPlayer != 'X' && aiPlayer != 'O') {
+            throw new IllegalArgumentException("the AI plays X or O");
+        }
+        session.state = new State(rows, cols, winCount, 'X');
+        session.opponentType = opponentType;
+        session.aiPlayer = aiPlayer;
+        session.status = "PLAYING";
+        games.incrementAndGet();
+        return "OK - PLAYING";
+    }
+
+    // PLAY <column> [budget ms]: the human's move, then the AI's reply unless the game is over
+    private String play(Session session, String[] words) throws InterruptedException {
+        State state = playing(session);
+        if (state.currentPlayer == session.aiPlayer) {
+            throw new IllegalStateException("it is the AI's move (GO)");
+        }
+        if (words.length < 2) {
+            throw new IllegalArgumentException("usage: PLAY <column> [budget ms]");
+        }
+        int col = Integer.parseInt(words[1]) - 1;
+        if (col < 0 || col >= state.cols || !state.canPlay(col)) {
+            throw new IllegalArgumentException("column " + words[1] + " cannot be played");
+        }
+        long budget = budget(words, 2); // Parsed before the move, so a bad request changes nothing
+        state.makeMove(col);
+        if (gameOver(session)) {
+            return "OK - " + session.status;
+        }
+        state.switchPlayer();
+        int move = aiMove(session, budget);
+        if (move < 0) {
+            state.switchPlayer(); // Take the human's move back so that the request can simply be retried
+            state.unmakeMove(col);
+            return "BUSY";
+        }
+        return "OK " + (move + 1) + " " + session.status;
+    }
+
+    // GO [budget ms]: the AI moves (it plays X, or a previous request was interrupted)
+    private String go(Session session, String[] words) throws InterruptedException {
+        State state = playing(session);
+        if (state.currentPlayer != session.aiPlayer) {
+            throw new IllegalStateException("it is the human's move (PLAY)");
+        }
+        int move = aiMove(session, budget(words, 1));
+        return move < 0 ? "BUSY" : "OK " + (move + 1) + " " + session.status;
+    }
+
+    // Returns the session's position, checking that a game is in progress
+    private static State playing(Session session) {
+        if (session.state == null) {
+            throw new IllegalStateException("no game (NEW)");
+        } else if (!session.status.equals("PLAYING")) {
+            throw new IllegalStateException("the game is over: " + session.status);
+        }
+        return session.state;
+    }
+
+    // The time budget of a request: the optional word at `index`, capped at maxBudgetMillis
+    private long budget(String[] words, int index) {
+        long budget = words.length > index ? Long.parseLong(words[index]) : defaultBudgetMillis;
+        return Math.max(1, Math.min(budget, maxBudgetMillis));
+    }
+
+    // Updates the status after a move; returns true if the game is over
+    private static boolean gameOver(Session session) {
+        State state = session.state;
+        if (state.lastMoveWins(state.winCount)) {
+            session.status = state.currentPlayer == 'X' ? "X_WINS" : "O_WINS";
+        } else if (state.isFull()) {
+            session.status = "DRAW";
+        }
+        return !session.status.equals("PLAYING");
+    }
+
+    // Searches and plays the AI's move on a CPU thread, waiting for the result. Time spent in the queue counts
+    // against the budget. Returns the column, or -1 if the queue was full and nothing was played.
+    private int aiMove(Session session, long budgetMillis) throws InterruptedException {
+        State state = session.state;
+        long submitted = System.nanoTime();
+        Future<Integer> result;
+        try {
+            result = cpuPool.submit(() -> {
+                long started = System.nanoTime();
+                queueNanos.addAndGet(started - submitted);
+                int move;
+                try {
+                    ConnectFour engine = engineFor(session);
+                    long waitedMillis = (started - submitted) / 1_000_000;
+                    engine.setTimeBudgetMillis(Math.max(1, budgetMillis - waitedMillis));
+                    move = engine.selectMove(state);
+                } catch (RuntimeException | Error e) {
+                    engines.get().clear(); // The failed engine may be inconsistent, and this frees memory after an OOM
+                    throw e;
+                }
+                searchNanos.addAndGet(System.nanoTime() - started);
+                return move;
+            });
+        } catch (RejectedExecutionException e) {
+            busy.incrementAndGet();
+            return -1;
+        }
+        int move;
+        try {
+            move = result.get();
+        } catch (ExecutionException e) {
+            session.state = null; // The search may have stopped half-way through a move on the position
+            throw new IllegalStateException("search failed, start a NEW game: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            throw e;
+        }
+        state.makeMove(move);
+        moves.incrementAndGet();
+        if (!gameOver(session)) {
+            state.switchPlayer();
+        }
+        return move;
+    }
+
+    // The calling CPU thread's engine for the session's board and engine type, created on first use
+    private ConnectFour engineFor(Session session) {
+        State state = session.state;
+        String key = state.rows + "x" + state.cols + "x" + state.winCount + ":" + session.opponentType;
+        Map<String, ConnectFour> cache = engines.get();
+        ConnectFour engine = cache.get(key);
+        if (engine == null) {
+            if (cache.size() >= ENGINES_PER_WORKER) {
+                cache.clear(); // Many custom boards: start over rather than grow without bound
+            }
+            engine = new ConnectFour(state.rows, state.cols, state.winCount, session.opponentType);
+            engine.setVerbose(false);
+            engine.setThreads(1); // Sessions run in parallel instead
+            engine.setTableSizeBits(ENGINE_TABLE_BITS);
+            cache.put(key, engine);
+        }
+        return engine;
+    }
+
+    // BOARD: the rows from the top, '.' for empty cells
+    private static String board(Session session) {
+        State state = session.state;
+        if (state == null) {
+            throw new IllegalStateException("no game (NEW)");
+        }
+        StringBuilder board = new StringBuilder("OK ");
+        for (int row = 0; row < state.rows; row++) {
+            if (row > 0) {
+                board.append('/');
+            }
+            for (int col = 0; col < state.cols; col++) {
+                char cell = state.getCell(row, col);
+                board.append(cell == ' ' ? '.' : cell);
+            }
+        }
+        return board.toString();
+    }
+
+    // STATS: load figures for sizing the server
+    private String stats() {
+        long played = moves.get();
+        return String.format("OK sessions=%d games=%d moves=%d busy=%d queued=%d workers=%d queueMs=%.3f searchMs=%.3f",
+                activeSessions.get(), games.get(), played, busy.get(), cpuPool.getQueue().size(), workers,
+                played == 0 ? 0 : queueNanos.get() / 1e6 / played, played == 0 ? 0 : searchNanos.get() / 1e6 / played);
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Options: --port <n>, --workers <CPU threads>, --queue <AI moves waiting for a CPU thread>,
+        // --budget <default ms per AI move>, --max-budget <ms>, --max-sessions <n>
+        int port = DEFAULT_PORT;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queue = -1; // 4 per CPU thread
+        long budget = DEFAULT_BUDGET_MS;
+        long maxBudget = MAX_BUDGET_MS;
+        int maxSessions = MAX_SESSIONS;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--queue":
+                    queue = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--budget":
+                    budget = Long.parseLong(args[i + 1]);
+                    break;
+                case "--max-budget":
+                    maxBudget = Long.parseLong(args[i + 1]);
+                    break;
+                case "--max-sessions":
+                    maxSessions = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        GameServer server = new GameServer(workers, queue < 0 ? 4 * workers : queue);
+        server.defaultBudgetMillis = budget;
+        server.maxBudgetMillis = maxBudget;
+        server.maxSessions = maxSessions;
+        int boundPort = server.start(port);
+        System.out.printf("Game server on 127.0.0.1:%d, %d CPU threads, queue of %d AI moves, %d ms per move%n",
+                boundPort, server.workers, server.cpuPool.getQueue().remainingCapacity(), budget);
+    }
+}
@@ -0,0 +1,255 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load generator for GameServer, run with `make load` (or `java LoadGenerator [options]`). Plays `--sessions`
+// games against the server, `--concurrency` connections at a time, the client picking random legal moves, and
+// reports sessions/sec and the p50/p99 latency of a move: from sending PLAY to reading the AI's reply, including
+// any retries after BUSY. With --embedded the server runs in the same JVM on a free port.
+public class LoadGenerator {
+    private static final int MAX_BACKOFF_MS = 200; // Longest pause before retrying a BUSY request
+
+    // One client connection's results
+    private static final class Results {
+        long[] latencies = new long[1024]; // Nanoseconds per move
+        int count;
+        long busy; // BUSY replies that were retried
+        int sessions; // Games played to the end
+
+        void add(long latency) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, 2 * count);
+            }
+            latencies[count++] = latency;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // Options: --host <name>, --port <n>, --sessions <games>, --concurrency <connections>, --board <RxCxW>,
+        // --engine <random|minimax|alphabeta|mcts>, --budget <ms per AI move>, --seed <n>,
+        // --embedded (start a server in this JVM), --workers <n> and --queue <n> (embedded server only)
+        String host = "127.0.0.1";
+        int port = GameServer.DEFAULT_PORT;
+        int sessions = 2000;
+        int concurrency = 500;
+        String board = "6x7x4";
+        String engine = "alphabeta";
+        long budget = 20;
+        long seed = System.nanoTime();
+        boolean embedded = false;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queue = -1; // 4 per CPU thread
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--embedded":
+                    embedded = true;
+                    break;
+                case "--host":
+                    host = args[++i];
+                    break;
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--sessions":
+                    sessions = Integer.parseInt(args[++i]);
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[++i]);
+                    break;
+                case "--board":
+                    board = args[++i];
+                    break;
+                case "--engine":
+                    engine = args[++i];
+                    break;
+                case "--budget":
+                    budget = Long.parseLong(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(args[++i]);
+                    break;
+                case "--queue":
+                    queue = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        String[] size = board.split("x");
+        int rows = Integer.parseInt(size[0]);
+        int cols = Integer.parseInt(size[1]);
+        int winCount = Integer.parseInt(size[2]);
+
+        GameServer server = null;
+        if (embedded) {
+            server = new GameServer(workers, queue < 0 ? 4 * workers : queue);
+            port = server.start(0);
+        }
+
+        try { // The embedded server's threads would keep the JVM alive if a client failed
+            // Every client connection plays games one after another until all sessions are taken
+            AtomicInteger remaining = new AtomicInteger(sessions);
+            AtomicLong seeds = new AtomicLong(seed);
+            List<Callable<Results>> clients = new ArrayList<>();
+            for (int i = 0; i < Math.min(concurrency, sessions); i++) {
+                String clientHost = host;
+                int clientPort = port;
+                String newGame = "NEW " + board + " " + engine;
+                long clientBudget = budget;
+                clients.add(() -> {
+                    Results results = new Results();
+                    Random random = new Random(seeds.getAndIncrement());
+                    while (remaining.getAndDecrement() > 0) {
+                        playSession(clientHost, clientPort, newGame, rows, cols, winCount, clientBudget, random, results);
+                    }
+                    return results;
+                });
+            }
+
+            ExecutorService executor = GameServer.newSessionExecutor();
+            Results total = new Results();
+            long startTime = System.nanoTime();
+            try {
+                for (Future<Results> result : executor.invokeAll(clients)) {
+                    Results results = result.get();
+                    for (int i = 0; i < results.count; i++) {
+                        total.add(results.latencies[i]);
+                    }
+                    total.busy += results.busy;
+                    total.sessions += results.sessions;
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Load client failed", e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+            double elapsedTime = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+            long[] latencies = Arrays.copyOf(total.latencies, total.count);
+            Arrays.sort(latencies);
+            System.out.printf("%d sessions (%s, %s, %d ms per AI move) in %.2f secs: %.1f sessions/sec, %.1f moves/sec, %d connections%n",
+                    total.sessions, board, engine, budget, elapsedTime, total.sessions / elapsedTime,
+                    latencies.length / elapsedTime, clients.size());
+            System.out.printf("Move latency: p50 %.2f ms, p99 %.2f ms, max %.2f ms; %d BUSY replies retried%n",
+                    percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                    latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6, total.busy);
+            try (Connection connection = new Connection(host, port)) {
+                System.out.println("Server: " + connection.request("STATS").substring(3));
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    // A client connection: one command line out, one reply line back
+    private static final class Connection implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final Writer out;
+
+        Connection(String host, int port) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        // Sends one command and returns the reply line
+        String request(String command) throws IOException {
+            out.write(command);
+            out.write('\n');
+            out.flush();
+            String reply = in.readLine();
+            if (reply == null) {
+                throw new IOException("Server closed the connection after " + command);
+            }
+            return reply;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    // Plays one game as X with random legal moves, recording the latency of every move
+    private static void playSession(String host, int port, String newGame, int rows, int cols, int winCount,
+                                    long budget, Random random, Results results) throws IOException, InterruptedException {
+        for (int attempts = 0; ; attempts++) {
+            try (Connection server = new Connection(host, port)) {
+                String reply = server.request(newGame);
+                if (reply.startsWith("BUSY")) { // Too many sessions: the server has closed the connection
+                    results.busy++;
+                    backOff(attempts, random);
+                    continue;
+                }
+                expectOk(newGame, reply);
+                State state = new State(rows, cols, winCount, 'X');
+                String status = "PLAYING";
+                while (status.equals("PLAYING")) {
+                    int col;
+                    do {
+                        col = random.nextInt(cols);
+                    } while (!state.canPlay(col));
+                    String play = "PLAY " + (col + 1) + " " + budget;
+                    long start = System.nanoTime();
+                    for (int retries = 0; (reply = server.request(play)).equals("BUSY"); retries++) {
+                        results.busy++; // CPU queue full: nothing was played
+                        backOff(retries, random);
+                    }
+                    results.add(System.nanoTime() - start);
+                    expectOk(play, reply);
+                    String[] words = reply.split(" "); // OK <AI move or -> <status>
+                    state.makeMove(col);
+                    if (!words[1].equals("-")) {
+                        state.switchPlayer();
+                        state.makeMove(Integer.parseInt(words[1]) - 1);
+                        state.switchPlayer();
+                    }
+                    status = words[2];
+                }
+                server.request("QUIT");
+                results.sessions++;
+                return;
+            }
+        }
+    }
+
+    // Waits before a retry: exponential backoff with full jitter, so rejected clients spread out instead of
+    // retrying in step and keeping the server's queue full
+    private static void backOff(long retries, Random random) throws InterruptedException {
+        int limit = (int) Math.min(MAX_BACKOFF_MS, 1L << Math.min(retries, 20));
+        Thread.sleep(1 + random.nextInt(limit));
+    }
+
+    private static void expectOk(String command, String reply) {
+        if (!reply.startsWith("OK")) {
+            throw new IllegalStateException(command + ": " + reply);
+        }
+    }
+
+    // The value below which a fraction q of the sorted values lie
+    private static long percentile(long[] sorted, double q) {
+        return sorted.length == 0 ? 0 : sorted[Math.max(0, (int) Math.ceil(q * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,190 @@
+// Monte Carlo Tree Search (UCT) over a single tree, used by one thread. The tree lives in flat arrays indexed
+// by node number (a node pool) rather than one object per node: all children of a node are allocated next to
+// each other, so a node only records its first child and child count. Root parallelism runs one tree per
+// thread and adds up the visit counts of their root moves.
+public class MonteCarloTreeSearch {
+    private static final double EXPLORATION = 1.41; // UCT exploration constant (about sqrt(2))
+
+    private final State root; // Position the tree is searched from
+    private final State scratch; // Walks down the tree and plays the random game out
+    private final int winCount; // Number of consecutive pieces needed to win
+    private final int capacity; // Maximum number of nodes in the pool
+
+    // Node pool: node 0 is the root
+    private final int[] firstChild; // Index of the node's first child
+    private final int[] childCount; // Number of children (0 = not expanded yet, or terminal)
+    private final int[] moves; // Column played to reach the node
+    private final int[] visits; // Playouts through the node
+    private final double[] rewards; // Reward of those playouts for the player who moved into the node (win 1, draw 0.5)
+    private int size; // Nodes in use
+
+    private final int[] path; // Nodes visited by the current playout, from the root down
+    private final int[] moveBuffer; // Valid moves during expansion and random play
+    private long seed; // xorshift random state
+    long playouts; // Playouts run since the last reset()
+
+    // Constructor: Creates a tree for positions of the root's size with room for `capacity` nodes
+    public MonteCarloTreeSearch(State root, int capacity, long seed) {
+        this.root = root.cloneState();
+        this.scratch = root.cloneState();
+        this.winCount = root.winCount;
+        this.capacity = capacity;
+        this.firstChild = new int[capacity];
+        this.childCount = new int[capacity];
+        this.moves = new int[capacity];
+        this.visits = new int[capacity];
+        this.rewards = new double[capacity];
+        this.path = new int[root.rows * root.cols + 1];
+        this.moveBuffer = new int[root.cols];
+        this.seed = seed == 0 ? 1 : seed;
+    }
+
+    // Clears the tree and sets a new root position
+    public void reset(State position) {
+        root.copyFrom(position);
+        size = 1;
+        childCount[0] = 0;
+        visits[0] = 0;
+        rewards[0] = 0;
+        playouts = 0;
+    }
+
+    // Runs playouts until the deadline passes or `maxPlayouts` have been run
+    public void run(long deadline, long maxPlayouts) {
+        while (playouts < maxPlayouts) {
+            if ((playouts & 63) == 0 && System.nanoTime() > deadline) {
+                break;
+            }
+            playout();
+            playouts++;
+        }
+    }
+
+    // Playouts through the root move `col`
+    public int childVisits(int col) {
+        int child = findChild(col);
+        return child < 0 ? 0 : visits[child];
+    }
+
+    // Total reward of the root move `col` for the player to move at the root
+    public double childRewards(int col) {
+        int child = findChild(col);
+        return child < 0 ? 0 : rewards[child];
+    }
+
+    // One iteration: selection, expansion, random playout and backpropagation
+    private void playout() {
+        scratch.copyFrom(root);
+        int node = 0;
+        int depth = 0;
+        path[depth++] = node;
+
+        // Selection: follow the UCT choice while the node is expanded
+        while (childCount[node] > 0) {
+            node = selectChild(node);
+            scratch.makeMove(moves[node]);
+            scratch.switchPlayer();
+            path[depth++] = node;
+        }
+
+        char winner; // Winning player, or ' ' for a draw
+        if (node != 0 && scratch.lastMoveWins(winCount)) {
+            winner = scratch.currentPlayer == 'X' ? 'O' : 'X'; // The player who just moved
+        } else if (scratch.isFull()) {
+            winner = ' ';
+        } else {
+            // Expansion: a leaf gets its children on its second visit (the root right away), then one is tried
+            if ((visits[node] > 0 || node == 0) && expand(node)) {
+                node = firstChild[node];
+                scratch.makeMove(moves[node]);
+                scratch.switchPlayer();
+                path[depth++] = node;
+            }
+            if (node != 0 && scratch.lastMoveWins(winCount)) {
+                winner = scratch.currentPlayer == 'X' ? 'O' : 'X';
+            } else {
+                winner = simulate();
+            }
+        }
+
+        // Backpropagation: a node's reward counts for the player who moved into it
+        char rootPlayer = root.currentPlayer;
+        for (int i = depth - 1; i >= 0; i--) {
+            int n = path[i];
+            visits[n]++;
+            char mover = (i % 2 == 1) ? rootPlayer : (rootPlayer == 'X' ? 'O' : 'X');
+            if (winner == ' ') {
+                rewards[n] += 0.5;
+            } else if (winner == mover) {
+                rewards[n] += 1;
+            }
+        }
+    }
+
+    // Picks the child with the highest UCT value; unvisited children are tried first
+    private int selectChild(int node) {
+        double logVisits = Math.log(visits[node]);
+        int best = firstChild[node];
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+            if (visits[child] == 0) {
+                return child;
+            }
+            double value = rewards[child] / visits[child] + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    // Allocates the children of a node from the pool; returns false when the pool is full
+    private boolean expand(int node) {
+        int count = scratch.getOrderedMoves(moveBuffer); // Centre columns first
+        if (size + count > capacity) {
+            return false; // Keep playing out from this leaf without growing the tree
+        }
+        firstChild[node] = size;
+        for (int i = 0; i < count; i++) {
+            int child = size++;
+            childCount[child] = 0;
+            moves[child] = moveBuffer[i];
+            visits[child] = 0;
+            rewards[child] = 0;
+        }
+        childCount[node] = count;
+        return true;
+    }
+
+    // Plays uniformly random moves to the end of the game and returns the winner (' ' for a draw)
+    private char simulate() {
+        while (!scratch.isFull()) {
+            int count = scratch.getValidMoves(moveBuffer);
+            scratch.makeMove(moveBuffer[nextInt(count)]);
+            if (scratch.lastMoveWins(winCount)) {
+                return scratch.currentPlayer; // The player who just moved
+            }
+            scratch.switchPlayer();
+        }
+        return ' ';
+    }
+
+    // Returns the root child reached by playing `col`, or -1
+    private int findChild(int col) {
+        for (int child = firstChild[0]; child < firstChild[0] + childCount[0]; child++) {
+            if (moves[child] == col) {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    // xorshift64 random number in [0, bound)
+    private int nextInt(int bound) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) ((seed >>> 33) % bound);
+    }
+}
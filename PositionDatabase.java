@@ -0,0 +1,318 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Position database: maps a position to its value and best move for the player to move. Small boards are
+// solved outright (every position reachable from the empty board); larger boards get an opening book of the
+// first plies, valued by a deep alpha-beta search. Built offline with `make book` (or
+// `java PositionDatabase <rows> <cols> <winCount> [plies depth]`) and memory-mapped by the game at startup.
+// File layout (big-endian), a hash table with linear probing that is at most half full:
+//   header   int magic, version, rows, cols, winCount, plies (-1 = every position), slot count (a power of two)
+//   keys     one long per slot: the smaller of State.positionKey() and State.mirrorPositionKey(), or 0 when empty
+//   entries  one short per slot: bits 0-5 best move, bits 6-7 result, bits 8-15 distance
+// A position and its left-right mirror image share one slot; the best move is stored for the orientation of
+// the key and flipped on lookup when the position is the mirrored one.
+public class PositionDatabase {
+    static final int LOSS = 0; // The player to move loses in `distance` plies
+    static final int DRAW = 1; // The game is drawn with best play
+    static final int WIN = 2; // The player to move wins in `distance` plies
+    static final int HEURISTIC = 3; // Book move, valued by a search of `distance` plies that found no forced result
+
+    private static final int MAGIC = 0x43344442; // "C4DB"
+    private static final int VERSION = 2; // 2: mirrored positions share a slot
+    private static final int HEADER_BYTES = 7 * 4;
+
+    final int rows, cols, winCount; // Board the database was built for
+    final int plies; // Plies covered by an opening book, or -1 when every position is stored
+    private final MappedByteBuffer buffer; // The whole file, read-only
+    private final int slotBits; // log2 of the slot count
+    private final int entriesOffset; // Byte offset of the entry array
+
+    // Maps a database file into memory and checks its header
+    private PositionDatabase(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // Stays mapped after closing
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " is not a position database");
+        }
+        rows = buffer.getInt(8);
+        cols = buffer.getInt(12);
+        winCount = buffer.getInt(16);
+        plies = buffer.getInt(20);
+        int slots = buffer.getInt(24);
+        slotBits = Integer.numberOfTrailingZeros(slots);
+        entriesOffset = HEADER_BYTES + slots * 8;
+    }
+
+    // File name of the database for a board, e.g. positions-6x7x4.bin
+    static Path fileFor(int rows, int cols, int winCount) {
+        return Paths.get("positions-" + rows + "x" + cols + "x" + winCount + ".bin");
+    }
+
+    // Loads the database for a board from the working directory, or returns null if there is none
+    static PositionDatabase load(int rows, int cols, int winCount) throws IOException {
+        Path file = fileFor(rows, cols, winCount);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        PositionDatabase database = new PositionDatabase(file);
+        if (database.rows != rows || database.cols != cols || database.winCount != winCount) {
+            throw new IOException(file + " was built for a different board");
+        }
+        return database;
+    }
+
+    // Returns the packed entry for the position, or -1 if it is not stored. Positions are stored for games
+    // started by 'X', so a position whose side to move does not match that is never found.
+    int lookup(State state) {
+        if (state.currentPlayer != (state.moveCount % 2 == 0 ? 'X' : 'O')) {
+            return -1;
+        }
+        long key = canonicalKey(state);
+        int mask = (1 << slotBits) - 1;
+        for (int slot = slot(key, slotBits); ; slot = (slot + 1) & mask) {
+            long stored = buffer.getLong(HEADER_BYTES + slot * 8);
+            if (stored == key) {
+                return orient(buffer.getShort(entriesOffset + slot * 2) & 0xFFFF, state);
+            } else if (stored == 0) {
+                return -1;
+            }
+        }
+    }
+
+    // Accessors for the fields of a packed entry
+    static int bestMove(int entry) {
+        return entry & 0x3F;
+    }
+
+    static int result(int entry) {
+        return (entry >>> 6) & 0x3;
+    }
+
+    static int distance(int entry) {
+        return entry >>> 8;
+    }
+
+    private static int pack(int bestMove, int result, int distance) {
+        return bestMove | (result << 6) | (Math.min(distance, 0xFF) << 8);
+    }
+
+    // Key shared by the position and its mirror image
+    private static long canonicalKey(State state) {
+        return Math.min(state.positionKey(), state.mirrorPositionKey());
+    }
+
+    // Converts an entry between the stored orientation and the position's own (flipping the best move
+    // when the position is the mirror image of the stored one); applying it twice gives the entry back
+    private static int orient(int entry, State state) {
+        if (state.mirrorPositionKey() < state.positionKey()) {
+            return (entry & ~0x3F) | (state.cols - 1 - bestMove(entry));
+        }
+        return entry;
+    }
+
+    // Describes an entry's value, e.g. "win in 5"
+    static String describe(int entry) {
+        switch (result(entry)) {
+            case WIN:
+                return "win in " + distance(entry);
+            case LOSS:
+                return "loss in " + distance(entry);
+            case DRAW:
+                return "draw";
+            default:
+                return "book (depth " + distance(entry) + ")";
+        }
+    }
+
+    // Home slot of a key (Fibonacci hashing)
+    private static int slot(long key, int slotBits) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - slotBits));
+    }
+
+    // In-memory table used while building a database; grows so it is never more than half full
+    private static final class Builder {
+        long[] keys = new long[1 << 10];
+        short[] entries = new short[1 << 10];
+        int slotBits = 10;
+        int size;
+
+        // Returns the entry stored for the key, or -1
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, slotBits); keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return entries[slot] & 0xFFFF;
+                }
+            }
+            return -1;
+        }
+
+        // Stores an entry for a key that is not in the table yet
+        void put(long key, int entry) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = slot(key, slotBits);
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            entries[slot] = (short) entry;
+            size++;
+        }
+
+        // Doubles the table and reinserts every entry
+        private void grow() {
+            long[] oldKeys = keys;
+            short[] oldEntries = entries;
+            slotBits++;
+            keys = new long[1 << slotBits];
+            entries = new short[1 << slotBits];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldEntries[i] & 0xFFFF);
+                }
+            }
+        }
+
+        // Writes the table in the database file format
+        void write(Path file, int rows, int cols, int winCount, int plies) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile()), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(rows);
+                out.writeInt(cols);
+                out.writeInt(winCount);
+                out.writeInt(plies);
+                out.writeInt(keys.length);
+                for (long key : keys) {
+                    out.writeLong(key);
+                }
+                for (short entry : entries) {
+                    out.writeShort(entry);
+                }
+            }
+        }
+    }
+
+    // Solves a position exactly by negamax over the rest of the game tree and stores it, along with every
+    // position reachable from it. Wins are preferred by fewest plies, losses by most plies.
+    private static int solve(State state, Builder table, int[][] moveBuffers) {
+        long key = canonicalKey(state);
+        int known = table.get(key);
+        if (known >= 0) {
+            return orient(known, state);
+        }
+        int[] moves = moveBuffers[state.moveCount];
+        int moveCount = state.getOrderedMoves(moves); // Centre columns first among equal moves
+        int best = -1;
+        for (int i = 0; i < moveCount; i++) {
+            int move = moves[i];
+            state.makeMove(move);
+            int entry;
+            if (state.lastMoveWins(state.winCount)) {
+                entry = pack(move, WIN, 1);
+            } else if (state.isFull()) {
+                entry = pack(move, DRAW, 1);
+            } else {
+                state.switchPlayer();
+                int reply = solve(state, table, moveBuffers);
+                state.switchPlayer();
+                int result = result(reply) == WIN ? LOSS : result(reply) == LOSS ? WIN : DRAW;
+                entry = pack(move, result, distance(reply) + 1);
+            }
+            state.unmakeMove(move);
+            if (best < 0 || rank(entry) > rank(best)) {
+                best = entry;
+            }
+        }
+        table.put(key, orient(best, state));
+        return best;
+    }
+
+    // Orders entries for the player to move: quicker wins, then draws, then slower losses
+    private static int rank(int entry) {
+        switch (result(entry)) {
+            case WIN:
+                return 512 - distance(entry);
+            case LOSS:
+                return -512 + distance(entry);
+            default:
+                return 0;
+        }
+    }
+
+    // Stores every position of the first `plies` plies, each valued by a fixed-depth alpha-beta search
+    private static void buildBook(State state, int plies, Builder table, ConnectFour engine, int depth) {
+        if (state.moveCount >= plies || table.get(canonicalKey(state)) >= 0) {
+            return;
+        }
+        int move = engine.selectMove(state);
+        int value = engine.getRootValue();
+        int entry;
+        if (Math.abs(value) >= ConnectFour.WIN_SCORE) {
+            // A forced result: the value encodes the move count at which the game ends
+            int end = state.rows * state.cols - (Math.abs(value) - ConnectFour.WIN_SCORE);
+            entry = pack(move, value > 0 ? WIN : LOSS, end - state.moveCount);
+        } else {
+            entry = pack(move, HEURISTIC, depth);
+        }
+        table.put(canonicalKey(state), orient(entry, state));
+
+        for (int col = 0; col < state.cols; col++) {
+            if (state.makeMove(col)) {
+                if (!state.lastMoveWins(state.winCount) && !state.isFull()) {
+                    state.switchPlayer();
+                    buildBook(state, plies, table, engine, depth);
+                    state.switchPlayer();
+                }
+                state.unmakeMove(col);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Usage: java PositionDatabase <rows> <cols> <winCount> [plies depth]
+        // Without plies every position is solved; with them an opening book is searched to the given depth.
+        int rows = Integer.parseInt(args[0]);
+        int cols = Integer.parseInt(args[1]);
+        int winCount = Integer.parseInt(args[2]);
+        int plies = args.length > 3 ? Integer.parseInt(args[3]) : -1;
+        int depth = args.length > 4 ? Integer.parseInt(args[4]) : 12;
+
+        State state = new State(rows, cols, winCount, 'X');
+        if (!state.fitsInLong()) {
+            throw new IllegalArgumentException("Position keys need a board that fits in a 64-bit bitboard");
+        }
+        Builder table = new Builder();
+        long startTime = System.nanoTime();
+        int root;
+        if (plies < 0) {
+            root = solve(state, table, new int[rows * cols + 1][cols]);
+        } else {
+            ConnectFour engine = new ConnectFour(rows, cols, winCount, 4);
+            engine.setVerbose(false);
+            engine.setTimeBudgetMillis(0); // Fixed depth, so every book entry is searched alike
+            engine.setSearchDepth(depth);
+            buildBook(state, plies, table, engine, depth);
+            root = orient(table.get(canonicalKey(state)), state);
+        }
+        double elapsedTime = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+        Path file = fileFor(rows, cols, winCount);
+        table.write(file, rows, cols, winCount, plies);
+        System.out.printf("%s: %d positions in %.2f secs, %d bytes; empty board: %s, best move @%d%n",
+                file, table.size, elapsedTime, Files.size(file), describe(root), bestMove(root) + 1);
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.Locale;
+
+// Counters describing one AI move, filled in by the search threads and merged when the move is chosen.
+// The node count is always kept (the searches use it to pace their clock checks); every other counter is only
+// collected when ENABLED is true. ENABLED is a static final read once from the `searchMetrics` system property,
+// so with -DsearchMetrics=false the JIT removes the counting code altogether.
+public class SearchMetrics {
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("searchMetrics", "true"));
+    private static final int WIN_CHECK_SAMPLE = 64; // One win check in 64 is timed (a power of two)
+    private static final long TIMER_OVERHEAD = timerOverhead(); // Cost of a System.nanoTime() pair
+
+    long nodes; // Positions visited (MCTS: playouts)
+    long leafEvaluations; // Positions scored by evaluateState() or a random playout
+    long cutoffs; // Beta cutoffs
+    long expandedNodes; // Positions whose moves were searched
+    long movesSearched; // Moves searched from those positions
+    long ttProbes; // Transposition table lookups
+    long ttHits; // Lookups that found the position
+    long winChecks; // Calls to State.lastMoveWins() during the search
+    long winCheckNanos; // Estimated time spent in those calls (summed over threads)
+    int depth; // Depth of the deepest completed iteration (0 for MCTS and random moves)
+    int threads = 1; // Threads that searched
+    long elapsedNanos; // Wall-clock time of the move
+    long allocatedBytes; // Bytes allocated by the thread that chose the move
+    String source = "search"; // Where the move came from: search, database or random
+
+    // Checks whether the last move won, timing one call in WIN_CHECK_SAMPLE. Timing every call would cost more
+    // than the check itself.
+    boolean lastMoveWins(State state, int winCount) {
+        if (!ENABLED || (winChecks++ & (WIN_CHECK_SAMPLE - 1)) != 0) {
+            return state.lastMoveWins(winCount);
+        }
+        long start = System.nanoTime();
+        boolean won = state.lastMoveWins(winCount);
+        winCheckNanos += Math.max(0, System.nanoTime() - start - TIMER_OVERHEAD) * WIN_CHECK_SAMPLE;
+        return won;
+    }
+
+    // Clears every counter for a new move
+    void reset() {
+        nodes = 0;
+        leafEvaluations = 0;
+        cutoffs = 0;
+        expandedNodes = 0;
+        movesSearched = 0;
+        ttProbes = 0;
+        ttHits = 0;
+        winChecks = 0;
+        winCheckNanos = 0;
+        depth = 0;
+        threads = 1;
+        elapsedNanos = 0;
+        allocatedBytes = 0;
+        source = "search";
+    }
+
+    // Adds the counters of another thread's search
+    void add(SearchMetrics other) {
+        nodes += other.nodes;
+        leafEvaluations += other.leafEvaluations;
+        cutoffs += other.cutoffs;
+        expandedNodes += other.expandedNodes;
+        movesSearched += other.movesSearched;
+        ttProbes += other.ttProbes;
+        ttHits += other.ttHits;
+        winChecks += other.winChecks;
+        winCheckNanos += other.winCheckNanos;
+    }
+
+    // Average number of moves searched per expanded position
+    double branchingFactor() {
+        return expandedNodes == 0 ? 0 : (double) movesSearched / expandedNodes;
+    }
+
+    // Branching factor of a uniform tree with the same node count and depth
+    double effectiveBranchingFactor() {
+        return depth == 0 || nodes == 0 ? 0 : Math.pow(nodes, 1.0 / depth);
+    }
+
+    double ttHitRate() {
+        return ttProbes == 0 ? 0 : (double) ttHits / ttProbes;
+    }
+
+    double nodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos;
+    }
+
+    // Share of the search threads' time spent checking for wins
+    double winCheckShare() {
+        return elapsedNanos == 0 ? 0 : (double) winCheckNanos / ((double) elapsedNanos * threads);
+    }
+
+    // One JSON object (without a line break) describing the move
+    String toJson(String engine, State state, int move) {
+        return String.format(Locale.ROOT,
+                "{\"time\":%d,\"board\":\"%dx%dx%d\",\"engine\":\"%s\",\"ply\":%d,\"player\":\"%c\",\"move\":%d,"
+                        + "\"source\":\"%s\",\"depth\":%d,\"nodes\":%d,\"leafEvaluations\":%d,\"cutoffs\":%d,"
+                        + "\"branchingFactor\":%.3f,\"effectiveBranchingFactor\":%.3f,\"ttProbes\":%d,\"ttHits\":%d,"
+                        + "\"ttHitRate\":%.4f,\"elapsedMs\":%.3f,\"nodesPerSec\":%.0f,\"winChecks\":%d,"
+                        + "\"winCheckMs\":%.3f,\"winCheckShare\":%.4f,\"threads\":%d,\"allocatedBytes\":%d}",
+                System.currentTimeMillis(), state.rows, state.cols, state.winCount, engine, state.moveCount,
+                state.currentPlayer, move, source, depth, nodes, leafEvaluations, cutoffs, branchingFactor(),
+                effectiveBranchingFactor(), ttProbes, ttHits, ttHitRate(), elapsedNanos / 1e6, nodesPerSecond(),
+                winChecks, winCheckNanos / 1e6, winCheckShare(), threads, allocatedBytes);
+    }
+
+    // Measures the smallest difference between two back-to-back System.nanoTime() calls
+    private static long timerOverhead() {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 10_000; i++) {
+            long start = System.nanoTime();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,371 @@
+import java.util.Arrays;
+
+// Exact solver: computes the game-theoretic value of a position, i.e. whether the player to move wins, draws or
+// loses with perfect play and how many plies it takes. It is a negamax search over the same bitboard layout as
+// State, kept in local longs (the mover's tokens and the occupied cells) so every node is a few bit operations:
+//  - scores count how early the game ends: a win with the mover's k-th remaining token scores
+//    (cells + 1 - moves) / 2 at the position, a loss the negation, a draw 0;
+//  - the exact score is found by null-window searches that halve the possible score range (MTD(f)-style);
+//  - a transposition table keeps upper and lower bounds, keyed by a unique position key shared with the
+//    mirror image of the position;
+//  - immediate wins are found before searching, moves that let the opponent win at once are never searched,
+//    and the remaining moves are ordered by the number of winning threats they create, centre columns first.
+// Run with `make solve` or `java Solver <rows> <cols> <winCount> [columns played, 1-based]`.
+public class Solver {
+    private static final int TABLE_SIZE_BITS = 24; // Transposition table slots (16M slots, 144 MB)
+
+    private final int rows, cols, winCount; // Board the solver was built for
+    private final int stride; // Bits per column (rows + sentinel), as in State
+    private final int cells; // rows * cols
+    private final long bottomMask; // Bottom cell of every column
+    private final long boardMask; // Every playable cell
+    private final long[] columnMasks; // Cells of each column
+    private final int[] centreOrder; // Columns from the centre outwards
+    private final int minScore, maxScore; // Score range over all positions of this board
+
+    private final int[] shifts; // Bit distance between neighbours in each direction a line fits in
+    private final long[] before, after; // Runs of tokens next to each cell, used by winningCells()
+    private final long[][] moveBuffers; // Ordered moves per ply (indexed by move count)
+    private final int[][] scoreBuffers; // Their ordering scores
+
+    private final long[] keys; // Transposition table: position key per slot (0 = empty)
+    private final byte[] values; // Packed bound per slot, see store()
+
+    long nodes; // Positions searched by the last solve()
+    long elapsedNanos; // Duration of the last solve()
+    int score; // Score of the last solved position for its player to move
+    int bestMove = -1; // A move achieving that score (-1 if the game is already over)
+    private int solvedMoves; // Tokens on the board in the last solved position
+
+    // Constructor: Creates a solver (and its transposition table) for one board size
+    public Solver(int rows, int cols, int winCount) {
+        State layout = new State(rows, cols, winCount, 'X');
+        if (!layout.fitsInLong()) {
+            throw new IllegalArgumentException("Board " + rows + "x" + cols + " does not fit in a 64-bit bitboard");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.winCount = winCount;
+        this.stride = layout.stride;
+        this.cells = rows * cols;
+        long bottom = 0;
+        this.columnMasks = new long[cols];
+        for (int col = 0; col < cols; col++) {
+            bottom |= 1L << (col * stride);
+            columnMasks[col] = ((1L << rows) - 1) << (col * stride);
+        }
+        this.bottomMask = bottom;
+        this.boardMask = bottom * ((1L << rows) - 1);
+        this.centreOrder = new int[cols];
+        layout.getOrderedMoves(centreOrder); // Every column is playable on the empty board
+        this.minScore = -cells / 2 + 1; // A loss as late as possible: the opponent's last token
+        this.maxScore = (cells + 1) / 2; // A win with the first token (never reached, but a safe bound)
+        // Only directions a line of winCount fits in: they cannot hold a win, and their shifts by up to
+        // (winCount - 1) * shift could reach 64, which Java masks into a short bogus shift. For the directions
+        // kept, (winCount - 1) * shift < cols * stride <= 64.
+        int[] fitting = new int[4];
+        int directions = 0;
+        if (winCount <= rows) {
+            fitting[directions++] = 1; // Vertical
+        }
+        if (winCount <= cols) {
+            fitting[directions++] = stride; // Horizontal
+        }
+        if (winCount <= rows && winCount <= cols) {
+            fitting[directions++] = stride - 1; // Diagonals
+            fitting[directions++] = stride + 1;
+        }
+        this.shifts = Arrays.copyOf(fitting, directions);
+        this.before = new long[winCount];
+        this.after = new long[winCount];
+        this.moveBuffers = new long[cells + 1][cols];
+        this.scoreBuffers = new int[cells + 1][cols];
+        this.keys = new long[1 << TABLE_SIZE_BITS];
+        this.values = new byte[1 << TABLE_SIZE_BITS];
+    }
+
+    // Solves a position with the player to move as State.currentPlayer and returns its score. Afterwards
+    // `bestMove`, `nodes` and `elapsedNanos` describe the search and result()/distance() decode the score.
+    public int solve(State state) {
+        if (state.rows != rows || state.cols != cols || state.winCount != winCount) {
+            throw new IllegalArgumentException("Solver was built for a " + rows + "x" + cols + "x" + winCount + " board");
+        }
+        if (state.lastMoveWins(winCount) || state.isFull()) {
+            throw new IllegalArgumentException("The game is already over");
+        }
+        long startTime = System.nanoTime();
+        nodes = 0;
+        solvedMoves = state.moveCount;
+        long mask = state.bitboard('X') | state.bitboard('O');
+        long current = state.bitboard(state.currentPlayer);
+        int moves = state.moveCount;
+
+        if ((winningCells(current, mask) & possible(mask)) != 0) {
+            score = (cells + 1 - moves) / 2; // Win with the next token
+        } else {
+            // Null-window searches narrowing [min, max] until it holds one score; probes near 0 come first
+            // so the win/draw/loss question is settled before the exact distance
+            int min = -(cells - moves) / 2;
+            int max = (cells + 1 - moves) / 2;
+            while (min < max) {
+                int med = min + (max - min) / 2;
+                if (med <= 0 && min / 2 < med) {
+                    med = min / 2;
+                } else if (med >= 0 && max / 2 > med) {
+                    med = max / 2;
+                }
+                int r = negamax(current, mask, moves, med, med + 1);
+                if (r <= med) {
+                    max = r;
+                } else {
+                    min = r;
+                }
+            }
+            score = min;
+        }
+        bestMove = findMove(current, mask, moves, score);
+        elapsedNanos = System.nanoTime() - startTime;
+        return score;
+    }
+
+    // Result of the last solved position for its player to move (PositionDatabase.WIN, DRAW or LOSS)
+    int result() {
+        return score > 0 ? PositionDatabase.WIN : score < 0 ? PositionDatabase.LOSS : PositionDatabase.DRAW;
+    }
+
+    // Plies from the last solved position to the end of the game with perfect play (0 for a draw)
+    int distance() {
+        if (score == 0) {
+            return 0;
+        }
+        // |score| = (cells + 1 - t) / 2 rounded down, where t is the number of tokens on the board before the
+        // winning one; of the two values of t this allows, the one with the winner's parity is the answer
+        int tokens = cells - 2 * Math.abs(score);
+        int parity = score > 0 ? solvedMoves & 1 : (solvedMoves + 1) & 1;
+        if ((tokens & 1) != parity) {
+            tokens++;
+        }
+        return tokens + 1 - solvedMoves;
+    }
+
+    // Negamax with alpha-beta pruning; the player to move cannot win with the next token.
+    // Returns the exact score if it lies in (alpha, beta), otherwise a bound on the side of the window it fell.
+    private int negamax(long current, long mask, int moves, int alpha, int beta) {
+        nodes++;
+        long next = nonLosingMoves(current, mask);
+        if (next == 0) {
+            return -(cells - moves) / 2; // Every move lets the opponent win with their next token
+        }
+        if (moves >= cells - 2) {
+            return 0; // Neither player can win with the last two tokens
+        }
+        int min = -(cells - 2 - moves) / 2; // The opponent cannot win with their next token
+        if (alpha < min) {
+            alpha = min;
+            if (alpha >= beta) {
+                return alpha;
+            }
+        }
+        int max = (cells - 1 - moves) / 2; // We cannot win with our next token
+        long key = key(current, mask);
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            int value = values[slot] & 0xFF;
+            if (value > maxScore - minScore + 1) { // Lower bound
+                min = value + 2 * minScore - maxScore - 2;
+                if (alpha < min) {
+                    alpha = min;
+                    if (alpha >= beta) {
+                        return alpha;
+                    }
+                }
+            } else { // Upper bound
+                max = value + minScore - 1;
+            }
+        }
+        if (beta > max) {
+            beta = max;
+            if (alpha >= beta) {
+                return beta;
+            }
+        }
+
+        // Order the moves by the threats they create (insertion sort keeps the centre-out order for ties)
+        long[] moveBits = moveBuffers[moves];
+        int[] moveScores = scoreBuffers[moves];
+        int count = 0;
+        for (int i = cols - 1; i >= 0; i--) { // Outermost first, so centre columns end up first among equals
+            long move = next & columnMasks[centreOrder[i]];
+            if (move != 0) {
+                int threats = Long.bitCount(winningCells(current | move, mask));
+                int j = count++;
+                while (j > 0 && moveScores[j - 1] > threats) {
+                    moveScores[j] = moveScores[j - 1];
+                    moveBits[j] = moveBits[j - 1];
+                    j--;
+                }
+                moveScores[j] = threats;
+                moveBits[j] = move;
+            }
+        }
+
+        for (int i = count - 1; i >= 0; i--) { // Most threats first
+            long newMask = mask | moveBits[i];
+            int value = -negamax(current ^ mask, newMask, moves + 1, -beta, -alpha); // The opponent moves next
+            if (value >= beta) {
+                store(slot, key, value + maxScore - 2 * minScore + 2); // Lower bound
+                return value;
+            }
+            if (value > alpha) {
+                alpha = value;
+            }
+        }
+        store(slot, key, alpha - minScore + 1); // Upper bound
+        return alpha;
+    }
+
+    // Finds a move that achieves the score: an immediate win, or a move whose reply position is no better
+    // than -score for the opponent (checked with a null-window search)
+    private int findMove(long current, long mask, int moves, int target) {
+        long possible = possible(mask);
+        long winning = winningCells(current, mask) & possible;
+        int fallback = -1;
+        for (int col : centreOrder) {
+            long move = possible & columnMasks[col];
+            if (move == 0) {
+                continue;
+            }
+            if ((winning & move) != 0) {
+                return col;
+            }
+            long newMask = mask | move;
+            long opponent = current ^ mask;
+            int childMoves = moves + 1;
+            int value;
+            if (childMoves == cells) {
+                value = 0; // The board is full: a draw
+            } else if ((winningCells(opponent, newMask) & possible(newMask)) != 0) {
+                value = -(cells + 1 - childMoves) / 2; // The opponent wins with their next token
+            } else if (-negamax(opponent, newMask, childMoves, -target, -target + 1) >= target) {
+                return col;
+            } else {
+                continue;
+            }
+            if (value >= target) {
+                return col;
+            }
+            if (fallback < 0) {
+                fallback = col;
+            }
+        }
+        return fallback;
+    }
+
+    // Playable cells: the lowest empty cell of every column that is not full
+    private long possible(long mask) {
+        return (mask + bottomMask) & boardMask;
+    }
+
+    // Playable moves that do not let the opponent win with their next token (0 if there are none)
+    private long nonLosingMoves(long current, long mask) {
+        long possible = possible(mask);
+        long opponentWins = winningCells(current ^ mask, mask);
+        long forced = possible & opponentWins;
+        if (forced != 0) {
+            if (Long.bitCount(forced) > 1) {
+                return 0; // The opponent has two immediate wins
+            }
+            possible = forced; // The opponent's winning cell must be blocked
+        }
+        return possible & ~(opponentWins >>> 1); // Never play directly below an opponent's winning cell
+    }
+
+    // Empty cells that would complete a line of winCount for the player owning `tokens`. Lines of 3 and 4 (the
+    // preset boards) are unrolled, which is much faster in this hot path; other lengths use the general loop.
+    private long winningCells(long tokens, long mask) {
+        long result = 0;
+        if (winCount == 4) {
+            for (int shift : shifts) {
+                long below = (tokens << shift) & (tokens << (2 * shift)); // Two tokens just below/left
+                result |= below & (tokens << (3 * shift));
+                result |= below & (tokens >>> shift);
+                long above = (tokens >>> shift) & (tokens >>> (2 * shift)); // Two tokens just above/right
+                result |= above & (tokens << shift);
+                result |= above & (tokens >>> (3 * shift));
+            }
+            return result & boardMask & ~mask;
+        } else if (winCount == 3) {
+            for (int shift : shifts) {
+                long below = tokens << shift;
+                long above = tokens >>> shift;
+                result |= below & (tokens << (2 * shift));
+                result |= below & above;
+                result |= above & (tokens >>> (2 * shift));
+            }
+            return result & boardMask & ~mask;
+        }
+        for (int shift : shifts) {
+            // before[k]: cells with k tokens in a row just below/left of them; after[k] likewise on the other side
+            before[0] = -1L;
+            after[0] = -1L;
+            for (int k = 1; k < winCount; k++) {
+                before[k] = before[k - 1] & (tokens << (k * shift));
+                after[k] = after[k - 1] & (tokens >>> (k * shift));
+            }
+            for (int k = 0; k < winCount; k++) {
+                result |= before[k] & after[winCount - 1 - k];
+            }
+        }
+        return result & boardMask & ~mask;
+    }
+
+    // Unique key of the position and player to move, shared with its mirror image
+    private long key(long current, long mask) {
+        long key = current + mask + bottomMask;
+        long columnMask = (1L << stride) - 1;
+        long mirrored = 0;
+        for (int col = 0; col < cols; col++) {
+            mirrored |= ((key >>> (col * stride)) & columnMask) << ((cols - 1 - col) * stride);
+        }
+        return Math.min(key, mirrored);
+    }
+
+    // Home slot of a key (Fibonacci hashing)
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - TABLE_SIZE_BITS));
+    }
+
+    // Stores a packed bound: values up to maxScore - minScore + 1 are upper bounds, larger ones lower bounds
+    private void store(int slot, long key, int value) {
+        keys[slot] = key;
+        values[slot] = (byte) value;
+    }
+
+    public static void main(String[] args) {
+        int rows = Integer.parseInt(args[0]);
+        int cols = Integer.parseInt(args[1]);
+        int winCount = Integer.parseInt(args[2]);
+        State state = new State(rows, cols, winCount, 'X');
+        String played = args.length > 3 ? args[3] : "";
+        for (char c : played.toCharArray()) {
+            int col = Character.digit(c, 36) - 1;
+            if (col < 0 || col >= cols || !state.makeMove(col)) {
+                throw new IllegalArgumentException("Invalid move " + c + " in " + played);
+            }
+            if (state.lastMoveWins(winCount)) {
+                throw new IllegalArgumentException("The game is already over after " + played);
+            }
+            state.switchPlayer();
+        }
+
+        Solver solver = new Solver(rows, cols, winCount);
+        int score = solver.solve(state);
+        double elapsedTime = solver.elapsedNanos / 1_000_000_000.0;
+        String result = solver.result() == PositionDatabase.WIN ? "wins in " + solver.distance() + " plies"
+                : solver.result() == PositionDatabase.LOSS ? "loses in " + solver.distance() + " plies" : "draws";
+        System.out.printf("%dx%dx%d after \"%s\": %c to move %s (score %d), best move @%d%n",
+                rows, cols, winCount, played, state.currentPlayer, result, score, solver.bestMove + 1);
+        System.out.printf(" %d nodes in %.3f secs (%.0f nodes/sec)%n",
+                solver.nodes, elapsedTime, solver.nodes / Math.max(elapsedTime, 1e-9));
+    }
+}
@@ -1,149 +1,482 @@
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class State {
-    char[][] board; // 2D array to represent the game board
+    private static final long SEED = 0x5EED_C4L; // Fixed seed so hashes are stable between runs
+    private static final long SIDE_KEY = new Random(SEED).nextLong(); // Zobrist key of the side to move
+    static final int MAX_ROWS = 63; // A column and its sentinel bit must fit in one long
+    static final int MAX_COLS = 255; // TranspositionTable keeps a best move + 1 in 8 bits
+    static final int MAX_CELLS = 4096; // Each State keeps two counters per window, about four windows per cell
+
+    // Bitboard layout: one long per column, so boards of any width fit. Bit 0 of a column is its bottom cell
+    // and bit `rows` is an always-empty sentinel that ends line walks at the top of the column. Cells are also
+    // numbered col * stride + row (row counted from the bottom) for the window and Zobrist tables; on boards
+    // of at most 64 such indices this is the bit index of bitboard().
+    long[] xCols; // Cells occupied by 'X', per column
+    long[] oCols; // Cells occupied by 'O', per column
+    int[] heights; // Number of pieces stacked in each column
+    int moveCount; // Number of pieces on the board
+    int[] history; // Columns played so far, in order
+    int lastRow = -1, lastCol = -1; // Cell of the most recent move (row 0 is the top row), -1 before any move
     char currentPlayer; // Current player ('X' or 'O')
     int rows, cols; // Dimensions of the board
+    final int stride; // Bits used per column (rows + sentinel)
+    long hash; // Zobrist hash of the tokens and side to move, updated incrementally
+    long mirrorHash; // Zobrist hash of the left-right mirror image of the position, updated alongside `hash`
+    private final long[][] zobrist; // Keys per player and cell index, sized for the board (shared between copies)
+    private final long[] acrossRuns, upRuns, downRuns; // Scratch columns for hasWinningLine()
+
+    // Heuristic evaluation, kept up to date by makeMove/unmakeMove. Every line of `winCount` cells is a window;
+    // a window holding only one player's tokens is worth windowWeights[tokens] to that player, and each token
+    // is also worth its column's centre weight. The score is O's total minus X's total.
+    final int winCount; // Number of consecutive pieces needed to win
+    private final int[][] cellWindows; // Windows containing each bit index (shared between copies)
+    private final int[] centreWeights; // Centre bonus per column (shared between copies)
+    private final int[] windowWeights; // Value of an open window by token count (shared between copies)
+    private final int[] centreOrder; // Columns sorted from the centre outwards (shared between copies)
+    private final int[] xCounts, oCounts; // Tokens of each player in each window
+    int score; // Heuristic score, positive is good for 'O'
 
-    // Constructor: Initializes the game state with a specified board size and starting player
-    public State(int rows, int cols, char currentPlayer) {
+    // Constructor: Initializes the game state with a specified board size, win condition and starting player
+    public State(int rows, int cols, int winCount, char currentPlayer) {
+        checkSize(rows, cols, winCount);
         this.rows = rows;
         this.cols = cols;
+        this.winCount = winCount;
         this.currentPlayer = currentPlayer;
-        this.board = new char[rows][cols]; // Create a blank board with given dimensions
-        initializeBoard(); // Fill the board with empty spaces
+        this.stride = rows + 1;
+        this.xCols = new long[cols];
+        this.oCols = new long[cols];
+        this.acrossRuns = new long[cols];
+        this.upRuns = new long[cols];
+        this.downRuns = new long[cols];
+        this.heights = new int[cols]; // Every column starts empty
+        this.history = new int[rows * cols];
+        this.zobrist = zobristKeys(cols * stride);
+        this.hash = currentPlayer == 'O' ? SIDE_KEY : 0; // Empty board, side key toggled by switchPlayer()
+        this.mirrorHash = hash;
+
+        // Enumerate every window as its start cell plus a step along one of the four directions
+        List<int[]> windows = new ArrayList<>();
+        int[][] directions = {{1, 0}, {0, 1}, {1, 1}, {-1, 1}}; // (row step, column step), rows counted from the bottom
+        for (int[] d : directions) {
+            for (int col = 0; col < cols; col++) {
+                for (int row = 0; row < rows; row++) {
+                    int endRow = row + d[0] * (winCount - 1);
+                    int endCol = col + d[1] * (winCount - 1);
+                    if (endRow >= 0 && endRow < rows && endCol < cols) {
+                        int[] cells = new int[winCount];
+                        for (int k = 0; k < winCount; k++) {
+                            cells[k] = (col + d[1] * k) * stride + row + d[0] * k;
+                        }
+                        windows.add(cells);
+                    }
+                }
+            }
+        }
+        int[] perCell = new int[cols * stride];
+        for (int[] cells : windows) {
+            for (int cell : cells) {
+                perCell[cell]++;
+            }
+        }
+        this.cellWindows = new int[cols * stride][];
+        for (int cell = 0; cell < cellWindows.length; cell++) {
+            cellWindows[cell] = new int[perCell[cell]];
+            perCell[cell] = 0;
+        }
+        for (int w = 0; w < windows.size(); w++) {
+            for (int cell : windows.get(w)) {
+                cellWindows[cell][perCell[cell]++] = w;
+            }
+        }
+        this.xCounts = new int[windows.size()];
+        this.oCounts = new int[windows.size()];
+
+        this.centreWeights = new int[cols];
+        long centreTotal = 0; // Largest centre term: every cell held by one player
+        for (int col = 0; col < cols; col++) {
+            centreWeights[col] = (cols - Math.abs(2 * col - (cols - 1))) / 2; // 0 on the edges, highest in the middle
+            centreTotal += (long) rows * centreWeights[col];
+        }
+        // 1, 4, 16, ...: each extra token makes a window four times as strong, up to the cap that keeps the largest
+        // possible score (every window at the top weight plus every centre bonus) below ConnectFour.WIN_SCORE, so a
+        // heuristic score is never taken for a forced result
+        long cap = (ConnectFour.WIN_SCORE - 1 - centreTotal) / Math.max(1, windows.size());
+        this.windowWeights = new int[winCount + 1];
+        for (int k = 1; k < winCount; k++) {
+            windowWeights[k] = (int) Math.min(1L << Math.min(2 * (k - 1), 62), cap);
+        }
+        long maxScore = centreTotal + (long) windows.size() * windowWeights[Math.max(0, winCount - 1)];
+        if (cap < 1 || maxScore >= ConnectFour.WIN_SCORE) {
+            throw new IllegalArgumentException("Board " + rows + "x" + cols + "x" + winCount + " is too large to evaluate");
+        }
+        this.centreOrder = new int[cols];
+        int next = 0;
+        for (int distance = 0; distance < cols; distance++) { // Twice the distance from the centre line
+            for (int col = 0; col < cols; col++) {
+                if (Math.abs(2 * col - (cols - 1)) == distance) {
+                    centreOrder[next++] = col;
+                }
+            }
+        }
     }
 
-    // Determines if the current state is a terminal state (win or draw)
-    public boolean isTerminal(int winCount) {
-        return checkWin(winCount) || isFull(); // Terminal if there's a win or the board is full
+    // Throws IllegalArgumentException naming the broken limit unless the engines can play a rows x cols board
+    // with `winCount` in a row. The game menu and the game server check boards with this before creating them.
+    static void checkSize(int rows, int cols, int winCount) {
+        String board = "Board " + rows + "x" + cols + "x" + winCount + ": ";
+        if (rows < 1 || rows > MAX_ROWS) {
+            throw new IllegalArgumentException(board + "rows must be 1 to " + MAX_ROWS);
+        }
+        if (cols < 1 || cols > MAX_COLS) {
+            throw new IllegalArgumentException(board + "columns must be 1 to " + MAX_COLS);
+        }
+        if (rows * cols > MAX_CELLS) {
+            throw new IllegalArgumentException(board + "at most " + MAX_CELLS + " cells");
+        }
+        if (winCount < 1 || winCount > Math.max(rows, cols)) {
+            throw new IllegalArgumentException(board + "tokens to win must be 1 to " + Math.max(rows, cols));
+        }
     }
 
-    // Fills the board with empty spaces (' ') to initialize it
-    private void initializeBoard() {
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                board[i][j] = ' '; // Empty space indicates an unoccupied cell
+    // Copy constructor: shares the immutable window tables and copies everything else
+    private State(State other) {
+        this.rows = other.rows;
+        this.cols = other.cols;
+        this.winCount = other.winCount;
+        this.stride = other.stride;
+        this.zobrist = other.zobrist;
+        this.xCols = new long[cols];
+        this.oCols = new long[cols];
+        this.acrossRuns = new long[cols];
+        this.upRuns = new long[cols];
+        this.downRuns = new long[cols];
+        this.heights = new int[cols];
+        this.history = new int[rows * cols];
+        this.cellWindows = other.cellWindows;
+        this.centreWeights = other.centreWeights;
+        this.windowWeights = other.windowWeights;
+        this.centreOrder = other.centreOrder;
+        this.xCounts = new int[other.xCounts.length];
+        this.oCounts = new int[other.oCounts.length];
+        copyFrom(other);
+    }
+
+    // Zobrist keys for a board with `cells` cell indices: one random number per (player, cell index), drawn from
+    // the fixed sequence after the side key, so every State of the same size hashes alike
+    private static long[][] zobristKeys(int cells) {
+        Random random = new Random(SEED);
+        random.nextLong(); // SIDE_KEY
+        long[][] keys = new long[2][cells];
+        for (int player = 0; player < 2; player++) {
+            for (int i = 0; i < cells; i++) {
+                keys[player][i] = random.nextLong();
             }
         }
+        return keys;
+    }
+
+    // Determines if the current state is a terminal state (win or draw)
+    public boolean isTerminal(int winCount) {
+        return lastMoveWins(winCount) || isFull(); // Terminal if the last move won or the board is full
     }
 
     // Creates a deep copy of the current state
     public State cloneState() {
-        State clone = new State(rows, cols, currentPlayer); // Create a new state with the same dimensions and current player
-        for (int i = 0; i < rows; i++) {
-            System.arraycopy(this.board[i], 0, clone.board[i], 0, cols); // Copy each row of the board
-        }
-        return clone; // Return the cloned state
+        return new State(this); // Return the cloned state
+    }
+
+    // Overwrites this state with another state of the same size, without allocating
+    public void copyFrom(State other) {
+        System.arraycopy(other.xCols, 0, xCols, 0, cols); // Copy the tokens
+        System.arraycopy(other.oCols, 0, oCols, 0, cols);
+        System.arraycopy(other.heights, 0, heights, 0, cols); // Copy the column heights
+        System.arraycopy(other.history, 0, history, 0, other.moveCount); // Copy the moves played so far
+        moveCount = other.moveCount;
+        lastRow = other.lastRow;
+        lastCol = other.lastCol;
+        currentPlayer = other.currentPlayer;
+        hash = other.hash;
+        mirrorHash = other.mirrorHash;
+        System.arraycopy(other.xCounts, 0, xCounts, 0, xCounts.length); // Copy the window counts
+        System.arraycopy(other.oCounts, 0, oCounts, 0, oCounts.length);
+        score = other.score;
     }
 
     // Places the current player's token in the specified column if possible
     public boolean makeMove(int col) {
-        for (int row = rows - 1; row >= 0; row--) { // Start from the bottom of the column
-            if (board[row][col] == ' ') { // If the cell is empty
-                board[row][col] = currentPlayer; // Place the current player's token
-                return true; // Move was successful
+        if (heights[col] >= rows) {
+            return false; // Return false if the column is full
+        }
+        int index = col * stride + heights[col]; // Lowest empty cell of the column
+        int mirrorIndex = (cols - 1 - col) * stride + heights[col]; // The same cell in the mirrored board
+        long bit = 1L << heights[col];
+        if (currentPlayer == 'X') {
+            xCols[col] |= bit;
+            hash ^= zobrist[0][index];
+            mirrorHash ^= zobrist[0][mirrorIndex];
+        } else {
+            oCols[col] |= bit;
+            hash ^= zobrist[1][index];
+            mirrorHash ^= zobrist[1][mirrorIndex];
+        }
+        updateScore(index, col, currentPlayer == 'X', 1);
+        heights[col]++;
+        history[moveCount++] = col;
+        lastRow = rows - heights[col]; // Row of the token just placed
+        lastCol = col;
+        return true; // Move was successful
+    }
+
+    // Removes the top token from the specified column, undoing the last move made there
+    public void unmakeMove(int col) {
+        heights[col]--;
+        int index = col * stride + heights[col];
+        long bit = 1L << heights[col];
+        boolean isX = (xCols[col] & bit) != 0;
+        hash ^= zobrist[isX ? 0 : 1][index]; // Remove the token's key
+        mirrorHash ^= zobrist[isX ? 0 : 1][(cols - 1 - col) * stride + heights[col]];
+        updateScore(index, col, isX, -1);
+        xCols[col] &= ~bit;
+        oCols[col] &= ~bit;
+        moveCount--;
+        if (moveCount > 0) { // The previous move becomes the last move again
+            lastCol = history[moveCount - 1];
+            lastRow = rows - heights[lastCol];
+        } else {
+            lastRow = -1;
+            lastCol = -1;
+        }
+    }
+
+    // Adds (delta = 1) or removes (delta = -1) a token's contribution to the windows through its cell
+    private void updateScore(int index, int col, boolean isX, int delta) {
+        for (int w : cellWindows[index]) {
+            score -= windowScore(xCounts[w], oCounts[w]);
+            if (isX) {
+                xCounts[w] += delta;
+            } else {
+                oCounts[w] += delta;
             }
+            score += windowScore(xCounts[w], oCounts[w]);
         }
-        return false; // Return false if the column is full
+        score += isX ? -delta * centreWeights[col] : delta * centreWeights[col];
     }
 
-    // Checks if the board is completely full
-    public boolean isFull() {
+    // Value of one window for 'O': zero when both players (or nobody) have tokens in it
+    private int windowScore(int x, int o) {
+        if (x == 0) {
+            return windowWeights[o];
+        }
+        return o == 0 ? -windowWeights[x] : 0;
+    }
+
+    // Checks if the board fits in one 64-bit bitboard, which bitboard(), positionKey() and the solver need
+    public boolean fitsInLong() {
+        return cols * stride <= 64;
+    }
+
+    // The player's tokens as one 64-bit bitboard, bit col * stride + row for each token (fitsInLong() boards only)
+    public long bitboard(char player) {
+        long[] columns = player == 'X' ? xCols : oCols;
+        long bits = 0;
         for (int col = 0; col < cols; col++) {
-            if (board[0][col] == ' ') { // If any cell in the top row is empty, the board is not full
+            bits |= columns[col] << (col * stride);
+        }
+        return bits;
+    }
+
+    // Unique key of the tokens on the board: in every column the X tokens plus a marker bit just above the top
+    // token, the columns packed `stride` bits apart. Equals X + (X | O) + bottom row on the packed bitboard, as
+    // the occupied cells of a column are contiguous from the bottom. fitsInLong() boards only.
+    public long positionKey() {
+        long key = 0;
+        for (int col = 0; col < cols; col++) {
+            key |= (xCols[col] | 1L << heights[col]) << (col * stride);
+        }
+        return key;
+    }
+
+    // Key of the left-right mirror image of the position: positionKey() with the columns reversed
+    public long mirrorPositionKey() {
+        long key = 0;
+        for (int col = 0; col < cols; col++) {
+            key |= (xCols[col] | 1L << heights[col]) << ((cols - 1 - col) * stride);
+        }
+        return key;
+    }
+
+    // Checks if the position is its own mirror image, so that column c and column (cols - 1 - c) are equivalent
+    public boolean isSymmetric() {
+        for (int col = 0; col < cols / 2; col++) {
+            if (xCols[col] != xCols[cols - 1 - col] || oCols[col] != oCols[cols - 1 - col]) {
                 return false;
             }
         }
-        return true; // All cells are occupied
+        return true;
+    }
+
+    // Checks if the column still has room for another token
+    public boolean canPlay(int col) {
+        return heights[col] < rows;
+    }
+
+    // Checks if the board is completely full
+    public boolean isFull() {
+        return moveCount == rows * cols; // All cells are occupied
     }
 
     // Checks if the current player has met the win condition
     public boolean checkWin(int winCount) {
-        return checkHorizontal(winCount) || checkVertical(winCount) || checkDiagonals(winCount);
-    }
-
-    // Checks for a horizontal win for the current player
-    private boolean checkHorizontal(int winCount) {
-        for (int row = 0; row < rows; row++) { // Iterate over all rows
-            for (int col = 0; col <= cols - winCount; col++) { // Iterate over valid starting points in the row
-                boolean win = true;
-                for (int k = 0; k < winCount; k++) { // Check the next `winCount` cells
-                    if (board[row][col + k] != currentPlayer) { // If any cell doesn't match the current player
-                        win = false; // No win
-                        break;
-                    }
-                }
-                if (win) return true; // Return true if all cells match
+        return hasWinningLine(currentPlayer == 'X' ? xCols : oCols, winCount);
+    }
+
+    // Checks if the token at the given cell is part of a line of `winCount`, walking only the four directions
+    // through it. The top token of a column can only have its vertical line below it, tested with one mask.
+    public boolean checkWinAt(int row, int col, int winCount) {
+        int r = rows - 1 - row; // Bit of the cell in its column
+        long[] bits = ((xCols[col] >>> r) & 1) != 0 ? xCols : oCols; // Tokens of the player owning the cell
+        if (((bits[col] >>> r) & 1) == 0) {
+            return false; // Empty cell
+        }
+        if (r == heights[col] - 1) {
+            long line = (1L << winCount) - 1;
+            if (r + 1 >= winCount && ((bits[col] >>> (r + 1 - winCount)) & line) == line) {
+                return true; // Vertical
             }
+        } else if (countLine(bits, col, r, 0, 1) >= winCount) {
+            return true; // Vertical
         }
-        return false; // No horizontal win found
+        return countLine(bits, col, r, 1, 0) >= winCount // Horizontal
+                || countLine(bits, col, r, 1, 1) >= winCount // Diagonal `/`
+                || countLine(bits, col, r, 1, -1) >= winCount; // Diagonal `\`
     }
 
-    // Checks for a vertical win for the current player
-    private boolean checkVertical(int winCount) {
-        for (int col = 0; col < cols; col++) { // Iterate over all columns
-            for (int row = 0; row <= rows - winCount; row++) { // Iterate over valid starting points in the column
-                boolean win = true;
-                for (int k = 0; k < winCount; k++) { // Check the next `winCount` cells
-                    if (board[row + k][col] != currentPlayer) { // If any cell doesn't match the current player
-                        win = false; // No win
-                        break;
-                    }
-                }
-                if (win) return true; // Return true if all cells match
-            }
+    // Checks if the most recent move completed a winning line: only lines through its cell can be new
+    public boolean lastMoveWins(int winCount) {
+        return moveCount > 0 && checkWinAt(lastRow, lastCol, winCount);
+    }
+
+    // Counts consecutive tokens through a cell along one direction (both ways); the board edges and the
+    // sentinel bit at the top of each column end the walk
+    private static int countLine(long[] bits, int col, int r, int colStep, int rowStep) {
+        int count = 1;
+        for (int c = col + colStep, i = r + rowStep; c < bits.length && i >= 0 && ((bits[c] >>> i) & 1) != 0;
+             c += colStep, i += rowStep) {
+            count++;
+        }
+        for (int c = col - colStep, i = r - rowStep; c >= 0 && i >= 0 && ((bits[c] >>> i) & 1) != 0;
+             c -= colStep, i -= rowStep) {
+            count++;
         }
-        return false; // No vertical win found
+        return count;
     }
 
-    // Checks for diagonal wins for the current player
-    private boolean checkDiagonals(int winCount) {
-        // Check for diagonal wins in the `/` direction
-        for (int row = 0; row <= rows - winCount; row++) { // Iterate over valid starting points for `/` diagonals
-            for (int col = 0; col <= cols - winCount; col++) {
-                boolean win = true;
-                for (int k = 0; k < winCount; k++) { // Check the next `winCount` cells diagonally
-                    if (board[row + k][col + k] != currentPlayer) { // If any cell doesn't match the current player
-                        win = false; // No win
-                        break;
-                    }
+    // Looks for `winCount` aligned tokens in any of the four directions using shift-and-AND
+    private boolean hasWinningLine(long[] bits, int winCount) {
+        if (winCount <= rows) {
+            for (int col = 0; col < cols; col++) {
+                if (hasRun(bits[col], winCount)) {
+                    return true; // Vertical
                 }
-                if (win) return true; // Return true if all cells match
             }
         }
-
-        // Check for diagonal wins in the `\` direction
-        for (int row = 0; row <= rows - winCount; row++) { // Iterate over valid starting points for `\` diagonals
-            for (int col = winCount - 1; col < cols; col++) {
-                boolean win = true;
-                for (int k = 0; k < winCount; k++) { // Check the next `winCount` cells diagonally
-                    if (board[row + k][col - k] != currentPlayer) { // If any cell doesn't match the current player
-                        win = false; // No win
-                        break;
-                    }
-                }
-                if (win) return true; // Return true if all cells match
+        if (winCount > cols) {
+            return false; // No room for the other directions
+        }
+        // Lines starting in column c: bit r of across[c], up[c] and down[c] stays set while the cells (c, r),
+        // (c + 1, r), ... (horizontal), (c + 1, r + 1), ... (diagonal `/`) and (c + 1, r - 1), ... (diagonal `\`)
+        // are all occupied. The loops have no branches or dependencies between columns, so the JIT can vectorize them.
+        int starts = cols - winCount + 1; // Columns in which a line can start
+        long[] across = acrossRuns, up = upRuns, down = downRuns;
+        for (int c = 0; c < starts; c++) {
+            across[c] = bits[c];
+            up[c] = bits[c];
+            down[c] = bits[c];
+        }
+        for (int k = 1; k < winCount; k++) {
+            for (int c = 0; c < starts; c++) {
+                long next = bits[c + k];
+                across[c] &= next;
+                up[c] &= next >>> k;
+                down[c] &= next << k;
             }
         }
+        long any = 0;
+        for (int c = 0; c < starts; c++) {
+            any |= across[c] | up[c] | down[c];
+        }
+        return any != 0; // Diagonals cannot fit when winCount > rows: the runs then lose every bit
+    }
+
+    // Checks one column for `length` tokens stacked on top of each other
+    private static boolean hasRun(long bits, int length) {
+        long run = bits; // Bit i stays set while cells i, i + 1, ... are all occupied
+        for (int k = 1; k < length && run != 0; k++) {
+            run = bits & (run >>> 1);
+        }
+        return run != 0;
+    }
+
+    // Returns the token at a cell (' ' when empty), where row 0 is the top row
+    public char getCell(int row, int col) {
+        long bit = 1L << (rows - 1 - row);
+        if ((xCols[col] & bit) != 0) {
+            return 'X';
+        }
+        return (oCols[col] & bit) != 0 ? 'O' : ' ';
+    }
 
-        return false; // No diagonal win found
+    // Builds a 2D character view of the board for display
+    public char[][] getBoard() {
+        char[][] board = new char[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                board[i][j] = getCell(i, j);
+            }
+        }
+        return board;
     }
 
     // Returns a list of valid moves (columns that are not full)
     public List<Integer> getValidMoves() {
         List<Integer> validMoves = new ArrayList<>(); // List to store valid column indices
         for (int col = 0; col < cols; col++) {
-            if (board[0][col] == ' ') { // If the top cell in the column is empty, the column is valid
+            if (heights[col] < rows) { // If the column still has an empty cell, the column is valid
                 validMoves.add(col);
             }
         }
         return validMoves; // Return the list of valid moves
     }
 
+    // Fills the buffer with the valid moves and returns how many were written (no allocation)
+    public int getValidMoves(int[] moves) {
+        int count = 0;
+        for (int col = 0; col < cols; col++) {
+            if (heights[col] < rows) {
+                moves[count++] = col;
+            }
+        }
+        return count;
+    }
+
+    // Fills the buffer with the valid moves, centre columns first, and returns how many were written
+    public int getOrderedMoves(int[] moves) {
+        int count = 0;
+        for (int col : centreOrder) {
+            if (heights[col] < rows) {
+                moves[count++] = col;
+            }
+        }
+        return count;
+    }
+
     // Switches the current player (X -> O or O -> X)
     public void switchPlayer() {
         currentPlayer = (currentPlayer == 'X') ? 'O' : 'X'; // Toggle between X and O
+        hash ^= SIDE_KEY;
+        mirrorHash ^= SIDE_KEY;
     }
 }
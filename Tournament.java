@@ -0,0 +1,336 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Headless self-play tournament, run with `make tournament` (or `java Tournament [options]`). Every pair of
+// engines plays each other with both colours on every board preset; the games run in parallel on a thread pool,
+// each engine searching single-threaded. Every game is streamed to the output file as one tab-separated line:
+//   board  X-engine  O-engine  winner (X, O or - for a draw)  opening plies  moves  nodes per move  microseconds per move
+// where moves are the 0-based columns as base-36 digits and the per-move lists are comma-separated.
+// The first plies of every game are random so that deterministic engines do not replay the same game.
+public class Tournament {
+    // Board presets: rows, cols, winCount (as in the game menu)
+    private static final int[][] PRESETS = {
+            {3, 3, 3},
+            {3, 5, 3},
+            {6, 7, 4},
+    };
+
+    private static final int BATCH_SIZE = 10; // Games per task; the engines are created once per task
+    private static final int TABLE_SIZE_BITS = 16; // Transposition table per alpha-beta engine (1 MB)
+
+    // An engine specification: random, minimax:<depth>, alphabeta:<depth> or mcts:<playouts>
+    private static final class Engine {
+        final String name;
+        final int opponentType; // As in ConnectFour (2 = Random, 3 = Minimax, 4 = Alpha-Beta, 5 = MCTS)
+        final int parameter; // Search depth or MCTS playouts
+
+        Engine(String name) {
+            this.name = name;
+            String[] parts = name.split(":");
+            switch (parts[0]) {
+                case "random":
+                    opponentType = 2;
+                    break;
+                case "minimax":
+                    opponentType = 3;
+                    break;
+                case "alphabeta":
+                    opponentType = 4;
+                    break;
+                case "mcts":
+                    opponentType = 5;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown engine: " + name);
+            }
+            if (opponentType != 2 && parts.length != 2) {
+                throw new IllegalArgumentException("Engine needs a depth or playout count: " + name);
+            }
+            parameter = parts.length == 2 ? Integer.parseInt(parts[1]) : 0;
+        }
+
+        // Creates a quiet, single-threaded, fixed-depth player for the given board
+        ConnectFour create(int[] preset) {
+            ConnectFour player = new ConnectFour(preset[0], preset[1], preset[2], opponentType);
+            player.setVerbose(false);
+            player.setThreads(1); // Games run in parallel instead
+            player.setTimeBudgetMillis(0);
+            player.setTableSizeBits(TABLE_SIZE_BITS);
+            if (opponentType == 5) {
+                player.setMctsPlayouts(parameter);
+            } else {
+                player.setSearchDepth(parameter);
+            }
+            return player;
+        }
+    }
+
+    // Results of one engine on one board, from that engine's point of view
+    private static final class Score {
+        long wins, draws, losses, moves, nodes, nanos;
+
+        void add(Score other) {
+            wins += other.wins;
+            draws += other.draws;
+            losses += other.losses;
+            moves += other.moves;
+            nodes += other.nodes;
+            nanos += other.nanos;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // Options: --games <n> per pairing and board, --engines <list>, --boards <list of presets 1-3 or RxCxW>,
+        // --threads <n>, --openings <random plies>, --seed <n>, --out <file>, --metrics <file of JSON lines per move>
+        int games = 20;
+        String engineList = "random,minimax:4,alphabeta:8,mcts:2000";
+        String boardList = "1,2,3";
+        int threads = Runtime.getRuntime().availableProcessors();
+        int openingPlies = 2;
+        long seed = System.nanoTime();
+        String out = "tournament.tsv";
+        String metricsFile = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--games":
+                    games = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--engines":
+                    engineList = args[i + 1];
+                    break;
+                case "--boards":
+                    boardList = args[i + 1];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--openings":
+                    openingPlies = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                case "--out":
+                    out = args[i + 1];
+                    break;
+                case "--metrics":
+                    metricsFile = args[i + 1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        String[] engineNames = engineList.split(",");
+        Engine[] engines = new Engine[engineNames.length];
+        for (int i = 0; i < engines.length; i++) {
+            engines[i] = new Engine(engineNames[i]);
+        }
+        String[] boardNames = boardList.split(",");
+        int[][] boards = new int[boardNames.length][];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = parseBoard(boardNames[i]);
+        }
+        Score[][] scores = new Score[boards.length][engines.length];
+        for (Score[] boardScores : scores) {
+            for (int e = 0; e < engines.length; e++) {
+                boardScores[e] = new Score();
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<Score[]>> results = new ArrayList<>();
+        List<int[]> taskInfo = new ArrayList<>(); // Board index, X engine and O engine of each task
+        long startTime = System.nanoTime();
+        long totalGames = 0;
+        try (Writer writer = new BufferedWriter(new FileWriter(out));
+             Writer metricsLog = metricsFile == null ? null : new BufferedWriter(new FileWriter(metricsFile))) {
+            try {
+                Random seeds = new Random(seed);
+                for (int b = 0; b < boards.length; b++) {
+                    int[] preset = boards[b];
+                    for (int x = 0; x < engines.length; x++) {
+                        for (int o = 0; o < engines.length; o++) {
+                            if (x == o) {
+                                continue;
+                            }
+                            for (int played = 0; played < games; played += BATCH_SIZE) {
+                                int batch = Math.min(BATCH_SIZE, games - played);
+                                Engine xEngine = engines[x];
+                                Engine oEngine = engines[o];
+                                long batchSeed = seeds.nextLong();
+                                int plies = openingPlies;
+                                results.add(pool.submit(() -> playBatch(preset, xEngine, oEngine, batch, plies, batchSeed, writer, metricsLog)));
+                                taskInfo.add(new int[] {b, x, o});
+                                totalGames += batch;
+                            }
+                        }
+                    }
+                }
+                for (int i = 0; i < results.size(); i++) {
+                    Score[] result = results.get(i).get(); // X's and O's results
+                    int[] info = taskInfo.get(i);
+                    scores[info[0]][info[1]].add(result[0]);
+                    scores[info[0]][info[2]].add(result[1]);
+                }
+            } finally {
+                // After a failure the other games may still be writing: stop them, and let them finish their
+                // current game before the writers are closed
+                pool.shutdownNow();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tournament game failed", e.getCause());
+        }
+        double elapsedTime = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+        System.out.printf("%d games in %.2f secs (%.1f games/sec, %d threads), results in %s%n",
+                totalGames, elapsedTime, totalGames / elapsedTime, Math.max(1, threads), out);
+        System.out.printf("%-8s %-16s %6s %6s %6s %6s %8s %12s %12s%n",
+                "Board", "Engine", "Games", "Wins", "Draws", "Losses", "Score", "ms/move", "nodes/sec");
+        Score[] totals = new Score[engines.length];
+        for (int e = 0; e < engines.length; e++) {
+            totals[e] = new Score();
+        }
+        for (int b = 0; b < boards.length; b++) {
+            int[] preset = boards[b];
+            String board = preset[0] + "x" + preset[1] + "x" + preset[2];
+            for (int e = 0; e < engines.length; e++) {
+                printScore(board, engines[e].name, scores[b][e]);
+                totals[e].add(scores[b][e]);
+            }
+        }
+        for (int e = 0; e < engines.length; e++) {
+            printScore("all", engines[e].name, totals[e]);
+        }
+    }
+
+    // Parses a board: a preset number (1-3) or custom dimensions such as 10x12x5 (rows x cols x winCount)
+    private static int[] parseBoard(String name) {
+        if (!name.contains("x")) {
+            return PRESETS[Integer.parseInt(name) - 1];
+        }
+        String[] parts = name.split("x");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Board must be rows x cols x winCount: " + name);
+        }
+        int[] board = {Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+        if (board[1] > 36) {
+            throw new IllegalArgumentException("At most 36 columns (moves are written as base-36 digits): " + name);
+        }
+        return board;
+    }
+
+    // Prints one engine's results; the score counts a draw as half a win
+    private static void printScore(String board, String engine, Score score) {
+        long played = score.wins + score.draws + score.losses;
+        String nodesPerSec = score.nodes == 0 ? "-" : String.format("%.0f", score.nodes * 1e9 / score.nanos);
+        System.out.printf("%-8s %-16s %6d %6d %6d %6d %7.1f%% %12.3f %12s%n",
+                board, engine, played, score.wins, score.draws, score.losses,
+                played == 0 ? 0 : (score.wins + score.draws / 2.0) * 100 / played,
+                score.moves == 0 ? 0 : score.nanos / 1e6 / score.moves, nodesPerSec);
+    }
+
+    // Plays a batch of games between two engines and returns the X and O engines' results
+    private static Score[] playBatch(int[] preset, Engine xEngine, Engine oEngine, int games, int openingPlies,
+                                     long seed, Writer writer, Writer metricsLog) {
+        ConnectFour xPlayer = xEngine.create(preset);
+        ConnectFour oPlayer = oEngine.create(preset);
+        xPlayer.setMetricsLog(metricsLog);
+        oPlayer.setMetricsLog(metricsLog);
+        Random random = new Random(seed);
+        Score xScore = new Score();
+        Score oScore = new Score();
+        int cells = preset[0] * preset[1];
+        long[] nodes = new long[cells];
+        long[] nanos = new long[cells];
+        StringBuilder line = new StringBuilder();
+
+        for (int game = 0; game < games && !Thread.currentThread().isInterrupted(); game++) { // Interrupted by shutdownNow()
+            State state = new State(preset[0], preset[1], preset[2], 'X');
+            char winner = '-';
+            while (true) {
+                int ply = state.moveCount;
+                long moveStart = System.nanoTime();
+                int col;
+                if (ply < openingPlies) {
+                    do {
+                        col = random.nextInt(state.cols); // Random opening move
+                    } while (!state.canPlay(col));
+                    nodes[ply] = 0;
+                } else {
+                    ConnectFour player = state.currentPlayer == 'X' ? xPlayer : oPlayer;
+                    col = player.selectMove(state);
+                    nodes[ply] = player.getVisitedStates();
+                }
+                nanos[ply] = System.nanoTime() - moveStart;
+                if (ply >= openingPlies) {
+                    Score score = state.currentPlayer == 'X' ? xScore : oScore;
+                    score.moves++;
+                    score.nodes += nodes[ply];
+                    score.nanos += nanos[ply];
+                }
+                state.makeMove(col);
+                if (state.lastMoveWins(preset[2])) {
+                    winner = state.currentPlayer;
+                    break;
+                } else if (state.isFull()) {
+                    break;
+                }
+                state.switchPlayer();
+            }
+
+            if (winner == 'X') {
+                xScore.wins++;
+                oScore.losses++;
+            } else if (winner == 'O') {
+                oScore.wins++;
+                xScore.losses++;
+            } else {
+                xScore.draws++;
+                oScore.draws++;
+            }
+            write(line, preset, xEngine, oEngine, winner, openingPlies, state, nodes, nanos, writer);
+        }
+        return new Score[] {xScore, oScore};
+    }
+
+    // Formats one game as a tab-separated line and appends it to the shared output file
+    private static void write(StringBuilder line, int[] preset, Engine xEngine, Engine oEngine, char winner,
+                              int openingPlies, State state, long[] nodes, long[] nanos, Writer writer) {
+        line.setLength(0);
+        line.append(preset[0]).append('x').append(preset[1]).append('x').append(preset[2]).append('\t')
+                .append(xEngine.name).append('\t').append(oEngine.name).append('\t')
+                .append(winner).append('\t').append(Math.min(openingPlies, state.moveCount)).append('\t');
+        for (int ply = 0; ply < state.moveCount; ply++) {
+            line.append(Character.forDigit(state.history[ply], 36));
+        }
+        line.append('\t');
+        for (int ply = 0; ply < state.moveCount; ply++) {
+            line.append(ply == 0 ? "" : ",").append(nodes[ply]);
+        }
+        line.append('\t');
+        for (int ply = 0; ply < state.moveCount; ply++) {
+            line.append(ply == 0 ? "" : ",").append(nanos[ply] / 1000);
+        }
+        line.append('\n');
+        try {
+            synchronized (writer) {
+                writer.write(line.toString());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
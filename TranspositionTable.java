@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+// Fixed-size transposition table for the alpha-beta search, stored in two parallel primitive arrays.
+// Each slot keeps the full Zobrist key and one packed entry:
+//   bits  0-31  value (absolute score, positive is good for 'O')
+//   bits 32-39  search depth below the position
+//   bits 40-41  bound type (EXACT, LOWER_BOUND, UPPER_BOUND)
+//   bits 42-49  best move + 1 (0 when unknown; State.MAX_COLS keeps it within the field)
+//   bits 50-57  search generation, used to age out entries from earlier moves
+//   bit  63     valid flag, so a packed entry is never 0
+// The table is shared by all search threads without locking: a slot stores key ^ entry next to the entry,
+// so a slot read while another thread is half-way through writing it fails the key check and is ignored.
+public class TranspositionTable {
+    static final int EXACT = 0; // Value is exact
+    static final int LOWER_BOUND = 1; // Search failed high: value >= stored value
+    static final int UPPER_BOUND = 2; // Search failed low: value <= stored value
+
+    private static final long VALID = 1L << 63;
+
+    private final long[] keys; // Zobrist key of the position in each slot, XORed with the entry
+    private final long[] entries; // Packed entry for each slot
+    private final int mask; // Slot count - 1 (slot count is a power of two)
+    private int generation; // Incremented for every new search
+
+    // Constructor: Creates a table with 2^sizeBits slots
+    public TranspositionTable(int sizeBits) {
+        int size = 1 << sizeBits;
+        this.keys = new long[size];
+        this.entries = new long[size];
+        this.mask = size - 1;
+    }
+
+    // Starts a new search, aging existing entries (call before the search threads start)
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    // Removes every entry
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(entries, 0);
+    }
+
+    // Looks up a position and returns its packed entry, or 0 if it is not stored
+    public long probe(long key) {
+        int slot = (int) key & mask;
+        long entry = entries[slot];
+        if (entry != 0 && (keys[slot] ^ entry) == key) {
+            return entry;
+        }
+        return 0;
+    }
+
+    // Stores a search result. An occupied slot is replaced when it holds the same position, an entry from an
+    // earlier search, or a result searched no deeper than the new one; otherwise the deeper result is kept.
+    public void store(long key, int value, int depth, int flag, int bestMove) {
+        int slot = (int) key & mask;
+        long old = entries[slot];
+        if (old != 0 && (keys[slot] ^ old) != key && generation(old) == generation && depth(old) > depth) {
+            return;
+        }
+        long entry = VALID
+                | ((long) generation << 50)
+                | ((long) (bestMove + 1) << 42)
+                | ((long) flag << 40)
+                | ((long) Math.min(depth, 0xFF) << 32)
+                | (value & 0xFFFFFFFFL);
+        keys[slot] = key ^ entry;
+        entries[slot] = entry;
+    }
+
+    // Accessors for the fields of a packed entry
+    static int value(long entry) {
+        return (int) entry;
+    }
+
+    static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    static int flag(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    static int bestMove(long entry) {
+        return ((int) (entry >>> 42) & 0xFF) - 1;
+    }
+
+    private static int generation(long entry) {
+        return (int) (entry >>> 50) & 0xFF;
+    }
+}